@@ -0,0 +1,110 @@
+package de.uniluebeck.itm.util.benchmarks;
+
+import com.google.inject.Guice;
+import com.google.inject.Provider;
+import de.uniluebeck.itm.util.domobserver.DOMObserver;
+import de.uniluebeck.itm.util.domobserver.DOMObserverFactory;
+import de.uniluebeck.itm.util.domobserver.DOMObserverListener;
+import de.uniluebeck.itm.util.domobserver.DOMObserverModule;
+import de.uniluebeck.itm.util.domobserver.DOMTuple;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one run of a DOM observer, i.e. loading the next DOM, evaluating the XPath expression of a listener on it
+ * and notifying the listener. The DOM provider alternates between two documents so that every run detects a change.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DOMObserverBenchmark {
+
+	@Param({"10", "1000"})
+	public int elements;
+
+	private DOMObserver observer;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) throws ParserConfigurationException {
+
+		final Document[] documents = {createDocument("a"), createDocument("b")};
+
+		observer = Guice.createInjector(new DOMObserverModule()).getInstance(DOMObserverFactory.class).create(
+				new Provider<Node>() {
+
+					private int next;
+
+					@Override
+					public Node get() {
+						return documents[next++ & 1];
+					}
+				}
+		);
+
+		observer.addListener(new DOMObserverListener() {
+			@Override
+			public QName getQName() {
+				return XPathConstants.NODESET;
+			}
+
+			@Override
+			public String getXPathExpression() {
+				return "/items/item";
+			}
+
+			@Override
+			public void onDOMChanged(final DOMTuple oldAndNew) {
+				blackhole.consume(oldAndNew);
+			}
+
+			@Override
+			public void onDOMLoadFailure(final Throwable cause) {
+				throw new RuntimeException(cause);
+			}
+
+			@Override
+			public void onXPathEvaluationFailure(final XPathExpressionException cause) {
+				throw new RuntimeException(cause);
+			}
+		}
+		);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void runSingleThreaded() {
+		observer.run();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void runMultiThreaded() {
+		observer.run();
+	}
+
+	private Document createDocument(final String value) throws ParserConfigurationException {
+		final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		final Element root = document.createElement("items");
+		document.appendChild(root);
+		for (int i = 0; i < elements; i++) {
+			final Element item = document.createElement("item");
+			item.setAttribute("id", Integer.toString(i));
+			item.setTextContent(value + i);
+			root.appendChild(item);
+		}
+		return document;
+	}
+}
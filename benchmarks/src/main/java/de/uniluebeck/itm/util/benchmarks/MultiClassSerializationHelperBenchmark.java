@@ -0,0 +1,132 @@
+package de.uniluebeck.itm.util.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.HashBiMap;
+import de.uniluebeck.itm.util.serialization.MultiClassSerializationHelper;
+import de.uniluebeck.itm.util.serialization.PooledBuffer;
+import de.uniluebeck.itm.util.serialization.SerializationBufferPool;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.NotSerializableException;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MultiClassSerializationHelper#serialize(Object)} and {@link MultiClassSerializationHelper#deserialize(
+ *byte[])} for payloads of different sizes, and serialization into pooled buffers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiClassSerializationHelperBenchmark {
+
+	@Param({"16", "1024", "65536"})
+	public int size;
+
+	private MultiClassSerializationHelper<Object> helper;
+
+	private Object object;
+
+	private byte[] serialized;
+
+	private final SerializationBufferPool pool = new SerializationBufferPool();
+
+	@Setup
+	public void setUp() throws NotSerializableException {
+
+		final Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+		serializers.put(String.class, new Function<String, byte[]>() {
+			@Override
+			public byte[] apply(final String input) {
+				return input.getBytes(Charsets.UTF_8);
+			}
+		}
+		);
+		serializers.put(BigInteger.class, new Function<BigInteger, byte[]>() {
+			@Override
+			public byte[] apply(final BigInteger input) {
+				return input.toByteArray();
+			}
+		}
+		);
+
+		final Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+		deserializers.put(String.class, new Function<byte[], String>() {
+			@Override
+			public String apply(final byte[] input) {
+				return new String(input, Charsets.UTF_8);
+			}
+		}
+		);
+		deserializers.put(BigInteger.class, new Function<byte[], BigInteger>() {
+			@Override
+			public BigInteger apply(final byte[] input) {
+				return new BigInteger(input);
+			}
+		}
+		);
+
+		final HashBiMap<Class<?>, Byte> mapping = HashBiMap.create();
+		mapping.put(String.class, (byte) 0);
+		mapping.put(BigInteger.class, (byte) 1);
+
+		helper = new MultiClassSerializationHelper<Object>(serializers, deserializers, mapping);
+
+		final byte[] bytes = new byte[size];
+		new Random(42).nextBytes(bytes);
+		object = new BigInteger(1, bytes);
+		serialized = helper.serialize(object);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public byte[] serializeSingleThreaded() throws NotSerializableException {
+		return helper.serialize(object);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public byte[] serializeMultiThreaded() throws NotSerializableException {
+		return helper.serialize(object);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int serializePooledSingleThreaded() throws NotSerializableException {
+		return serializePooled();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int serializePooledMultiThreaded() throws NotSerializableException {
+		return serializePooled();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object deserializeSingleThreaded() {
+		return helper.deserialize(serialized);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object deserializeMultiThreaded() {
+		return helper.deserialize(serialized);
+	}
+
+	private int serializePooled() throws NotSerializableException {
+		final PooledBuffer pooled = helper.serialize(object, pool);
+		try {
+			return pooled.getBuffer().remaining();
+		} finally {
+			pooled.close();
+		}
+	}
+}
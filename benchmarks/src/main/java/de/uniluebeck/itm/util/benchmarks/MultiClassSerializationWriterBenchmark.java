@@ -0,0 +1,131 @@
+package de.uniluebeck.itm.util.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.HashBiMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import de.uniluebeck.itm.util.serialization.MultiClassSerializationHelper;
+import de.uniluebeck.itm.util.serialization.MultiClassSerializationReader;
+import de.uniluebeck.itm.util.serialization.MultiClassSerializationWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link MultiClassSerializationWriter} and {@link MultiClassSerializationReader} with and without compression
+ * for a stream of repetitive event-like records. The compression ratio of each configuration is reported as the <code>bytesPerRecord</code> counter.
+ * A compression level of <code>-2</code> denotes an uncompressed stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiClassSerializationWriterBenchmark {
+
+	private static final int RECORDS = 10000;
+
+	@Param({"-2", "1", "6", "9"})
+	public int compressionLevel;
+
+	@Param({"false", "true"})
+	public boolean dictionary;
+
+	private MultiClassSerializationHelper<Object> helper;
+
+	private String[] events;
+
+	private byte[] presetDictionary;
+
+	private ByteBuffer stream;
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+
+		public long bytesPerRecord;
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+
+		final Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+		serializers.put(String.class, new Function<String, byte[]>() {
+			@Override
+			public byte[] apply(final String input) {
+				return input.getBytes(Charsets.UTF_8);
+			}
+		}
+		);
+
+		final Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+		deserializers.put(String.class, new Function<byte[], String>() {
+			@Override
+			public String apply(final byte[] input) {
+				return new String(input, Charsets.UTF_8);
+			}
+		}
+		);
+
+		final HashBiMap<Class<?>, Byte> mapping = HashBiMap.create();
+		mapping.put(String.class, (byte) 0);
+
+		helper = new MultiClassSerializationHelper<Object>(serializers, deserializers, mapping);
+
+		final Random random = new Random(42);
+		events = new String[RECORDS];
+		for (int i = 0; i < RECORDS; i++) {
+			events[i] = "{\"type\":\"sensorReading\",\"node\":\"urn:wisebed:uzl1:0x" + Integer.toHexString(random.nextInt(64)) +
+					"\",\"timestamp\":" + (1400000000000L + i * 17) + ",\"value\":" + random.nextInt(1024) + "}";
+		}
+		presetDictionary = dictionary ? (events[0] + events[1] + events[2]).getBytes(Charsets.UTF_8) : null;
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(createWriter(out));
+		stream = ByteBuffer.wrap(out.toByteArray());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public long write(final Counters counters) throws IOException {
+		final CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+		write(createWriter(out));
+		counters.bytesPerRecord = out.getCount() / RECORDS;
+		return out.getCount();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(RECORDS)
+	public int read() throws IOException {
+		final MultiClassSerializationReader<Object> reader = new MultiClassSerializationReader<Object>(helper, stream, presetDictionary);
+		int count = 0;
+		while (reader.read() != null) {
+			count++;
+		}
+		reader.close();
+		return count;
+	}
+
+	private MultiClassSerializationWriter<Object> createWriter(final OutputStream out) throws IOException {
+		if (compressionLevel == -2) {
+			return new MultiClassSerializationWriter<Object>(helper, out);
+		}
+		return new MultiClassSerializationWriter<Object>(helper, out, 64 * 1024, compressionLevel, presetDictionary);
+	}
+
+	private void write(final MultiClassSerializationWriter<Object> writer) throws IOException {
+		for (String event : events) {
+			writer.write(event);
+		}
+		writer.close();
+	}
+}
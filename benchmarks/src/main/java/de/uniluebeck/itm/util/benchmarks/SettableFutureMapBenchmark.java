@@ -0,0 +1,50 @@
+package de.uniluebeck.itm.util.benchmarks;
+
+import com.google.common.util.concurrent.SettableFuture;
+import de.uniluebeck.itm.util.concurrent.SettableFutureMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SettableFutureMap#get()} on a map of completed futures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SettableFutureMapBenchmark {
+
+	@Param({"10", "1000"})
+	public int size;
+
+	private SettableFutureMap<Integer, Integer> futureMap;
+
+	@Setup
+	public void setUp() {
+		final Map<Integer, SettableFuture<Integer>> futures = new HashMap<Integer, SettableFuture<Integer>>();
+		for (int i = 0; i < size; i++) {
+			final SettableFuture<Integer> future = SettableFuture.create();
+			future.set(i);
+			futures.put(i, future);
+		}
+		futureMap = new SettableFutureMap<Integer, Integer>(futures);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Map<Integer, Integer> getSingleThreaded() throws ExecutionException, InterruptedException {
+		return futureMap.get();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Map<Integer, Integer> getMultiThreaded() throws ExecutionException, InterruptedException {
+		return futureMap.get();
+	}
+}
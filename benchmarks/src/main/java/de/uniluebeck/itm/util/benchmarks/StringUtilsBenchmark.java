@@ -0,0 +1,42 @@
+package de.uniluebeck.itm.util.benchmarks;
+
+import de.uniluebeck.itm.util.StringUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link StringUtils#toHexString(byte[])} for messages of different lengths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringUtilsBenchmark {
+
+	@Param({"16", "256", "4096"})
+	public int length;
+
+	private byte[] bytes;
+
+	@Setup
+	public void setUp() {
+		bytes = new byte[length];
+		new Random(42).nextBytes(bytes);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String toHexStringSingleThreaded() {
+		return StringUtils.toHexString(bytes);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String toHexStringMultiThreaded() {
+		return StringUtils.toHexString(bytes);
+	}
+}
@@ -0,0 +1,83 @@
+package de.uniluebeck.itm.util.benchmarks;
+
+import de.uniluebeck.itm.util.ConcurrentTimedCache;
+import de.uniluebeck.itm.util.TimedCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reads and writes of {@link TimedCache} and {@link ConcurrentTimedCache} with a single thread and with four
+ * contending threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimedCacheBenchmark {
+
+	@Param({"TimedCache", "ConcurrentTimedCache"})
+	public String implementation;
+
+	@Param({"1000", "100000"})
+	public int size;
+
+	private Map<Integer, Integer> cache;
+
+	private Integer[] keys;
+
+	@Setup
+	public void setUp() {
+		if ("TimedCache".equals(implementation)) {
+			cache = new TimedCache<Integer, Integer>(10, TimeUnit.MINUTES);
+		} else {
+			cache = new ConcurrentTimedCache<Integer, Integer>(10, TimeUnit.MINUTES);
+		}
+		keys = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = i;
+			cache.put(keys[i], i);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		((Closeable) cache).close();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Integer getSingleThreaded() {
+		return cache.get(randomKey());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Integer getMultiThreaded() {
+		return cache.get(randomKey());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Integer putSingleThreaded() {
+		final Integer key = randomKey();
+		return cache.put(key, key);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Integer putMultiThreaded() {
+		final Integer key = randomKey();
+		return cache.put(key, key);
+	}
+
+	private Integer randomKey() {
+		return keys[ThreadLocalRandom.current().nextInt(size)];
+	}
+}
@@ -0,0 +1,16 @@
+package de.uniluebeck.itm.util.concurrent;
+
+/**
+ * A listener for the aggregate progress of a {@link ProgressSettableFutureMap}, see
+ * {@link ProgressSettableFutureMap#addProgressListener(AggregateProgressListener, java.util.concurrent.Executor)}.
+ */
+public interface AggregateProgressListener {
+
+	/**
+	 * Called when the aggregate progress changed.
+	 *
+	 * @param progress the aggregate progress, between <code>0f</code> and <code>1f</code>
+	 */
+	void progressChanged(float progress);
+
+}
@@ -0,0 +1,51 @@
+package de.uniluebeck.itm.util.concurrent;
+
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the completion of a fixed set of futures by counting down on each completion, so that each completion costs O(1) and the listeners
+ * waiting for all futures are executed exactly once, when the last future completes.
+ */
+class CompletionCountdown implements Runnable {
+
+	private final AtomicInteger remaining;
+
+	private final ExecutionList executionList = new ExecutionList();
+
+	CompletionCountdown(final Collection<? extends ListenableFuture<?>> futures) {
+		remaining = new AtomicInteger(futures.size());
+		if (futures.isEmpty()) {
+			executionList.execute();
+		}
+		for (ListenableFuture<?> future : futures) {
+			future.addListener(this, MoreExecutors.directExecutor());
+		}
+	}
+
+	@Override
+	public void run() {
+		if (remaining.decrementAndGet() == 0) {
+			executionList.execute();
+		}
+	}
+
+	/**
+	 * Returns whether all futures are done, i.e. whether the listeners of the last completed future have run.
+	 */
+	boolean isDone() {
+		return remaining.get() == 0;
+	}
+
+	/**
+	 * Adds a listener to be executed once all futures are done, or immediately if they already are.
+	 */
+	void addListener(final Runnable listener, final Executor executor) {
+		executionList.add(listener, executor);
+	}
+}
@@ -0,0 +1,28 @@
+package de.uniluebeck.itm.util.concurrent;
+
+/**
+ * A callback for the entries of a future map, notified in the order in which the entries complete, see
+ * {@link ListenableFutureMaps#addEntryCallback(java.util.Map, FutureMapEntryCallback, java.util.concurrent.Executor)}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public interface FutureMapEntryCallback<K, V> {
+
+	/**
+	 * Called when the future of <code>key</code> completed successfully.
+	 *
+	 * @param key   the key of the entry
+	 * @param value the value of the entry
+	 */
+	void onSuccess(K key, V value);
+
+	/**
+	 * Called when the future of <code>key</code> failed or was cancelled.
+	 *
+	 * @param key the key of the entry
+	 * @param t   the cause of the failure, or a {@link java.util.concurrent.CancellationException}
+	 */
+	void onFailure(K key, Throwable t);
+
+}
@@ -0,0 +1,75 @@
+package de.uniluebeck.itm.util.concurrent;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The partial result of a future map, collected until a deadline, see
+ * {@link ListenableFutureMaps#getAll(java.util.Map, long, java.util.concurrent.TimeUnit)}. Every key of the map is contained in exactly one of
+ * the values, the failures and the pending keys.
+ * <p/>
+ * Instances are immutable.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class FutureMapResult<K, V> {
+
+	private final Map<K, V> values;
+
+	private final Map<K, Throwable> failures;
+
+	private final Set<K> pending;
+
+	public FutureMapResult(final Map<K, V> values, final Map<K, Throwable> failures, final Set<K> pending) {
+		this.values = Collections.unmodifiableMap(new HashMap<K, V>(values));
+		this.failures = ImmutableMap.copyOf(failures);
+		this.pending = ImmutableSet.copyOf(pending);
+	}
+
+	/**
+	 * Returns the values of the entries that completed successfully. Values may be <code>null</code>.
+	 *
+	 * @return an unmodifiable map from key to value
+	 */
+	public Map<K, V> getValues() {
+		return values;
+	}
+
+	/**
+	 * Returns the causes of the entries that failed or were cancelled.
+	 *
+	 * @return an immutable map from key to the cause of the failure
+	 */
+	public Map<K, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns the keys of the entries that were not done by the deadline.
+	 *
+	 * @return an immutable set of keys
+	 */
+	public Set<K> getPending() {
+		return pending;
+	}
+
+	/**
+	 * Returns whether all entries completed successfully.
+	 *
+	 * @return <code>true</code> if there are neither failures nor pending entries
+	 */
+	public boolean isSuccessful() {
+		return failures.isEmpty() && pending.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "FutureMapResult{values=" + values.keySet() + ", failures=" + failures + ", pending=" + pending + "}";
+	}
+}
@@ -0,0 +1,295 @@
+package de.uniluebeck.itm.util.concurrent;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Static methods for consuming the entries of future maps, e.g. {@link ListenableFutureMap}s and {@link ProgressListenableFutureMap}s, in the
+ * order in which they complete instead of waiting for the whole map.
+ */
+public final class ListenableFutureMaps {
+
+	private ListenableFutureMaps() {
+	}
+
+	/**
+	 * Notifies <code>callback</code> of the result of each entry of <code>map</code> as soon as it completes. Entries that are already done are
+	 * passed to the callback right away.
+	 *
+	 * @param map      the future map
+	 * @param callback the callback
+	 * @param executor the executor running the callback
+	 */
+	public static <K, V> void addEntryCallback(final Map<K, ? extends ListenableFuture<V>> map,
+											   final FutureMapEntryCallback<? super K, ? super V> callback,
+											   final Executor executor) {
+		checkNotNull(callback);
+		checkNotNull(executor);
+		for (final Map.Entry<K, ? extends ListenableFuture<V>> entry : map.entrySet()) {
+			final K key = entry.getKey();
+			final ListenableFuture<V> future = entry.getValue();
+			future.addListener(new Runnable() {
+				@Override
+				public void run() {
+					final V value;
+					try {
+						value = Uninterruptibles.getUninterruptibly(future);
+					} catch (ExecutionException e) {
+						callback.onFailure(key, e.getCause());
+						return;
+					} catch (CancellationException e) {
+						callback.onFailure(key, e);
+						return;
+					} catch (RuntimeException e) {
+						callback.onFailure(key, e);
+						return;
+					}
+					callback.onSuccess(key, value);
+				}
+			}, executor
+			);
+		}
+	}
+
+	/**
+	 * Returns an iterator over the entries of <code>map</code> in the order in which their futures complete. {@link Iterator#next()} blocks until the
+	 * next future is done, so the future of each returned entry is done and its value or failure can be retrieved without blocking.
+	 *
+	 * @param map the future map
+	 * @return a blocking iterator over the entries in completion order
+	 */
+	public static <K, V> Iterator<Map.Entry<K, ListenableFuture<V>>> inCompletionOrder(
+			final Map<K, ? extends ListenableFuture<V>> map) {
+
+		final BlockingQueue<Map.Entry<K, ListenableFuture<V>>> completed =
+				new LinkedBlockingQueue<Map.Entry<K, ListenableFuture<V>>>();
+		final int size = map.size();
+
+		for (final Map.Entry<K, ? extends ListenableFuture<V>> entry : map.entrySet()) {
+			final Map.Entry<K, ListenableFuture<V>> completedEntry =
+					Maps.<K, ListenableFuture<V>>immutableEntry(entry.getKey(), entry.getValue());
+			entry.getValue().addListener(new Runnable() {
+				@Override
+				public void run() {
+					completed.add(completedEntry);
+				}
+			}, MoreExecutors.directExecutor()
+			);
+		}
+
+		return new AbstractIterator<Map.Entry<K, ListenableFuture<V>>>() {
+
+			private int returned;
+
+			@Override
+			protected Map.Entry<K, ListenableFuture<V>> computeNext() {
+				if (returned == size) {
+					return endOfData();
+				}
+				returned++;
+				return Uninterruptibles.takeUninterruptibly(completed);
+			}
+		};
+	}
+
+	/**
+	 * Returns a future which completes with the values of the first <code>k</code> entries of <code>map</code> that complete successfully, in
+	 * the order in which they completed. The returned future fails as soon as so many entries have failed that <code>k</code> successful entries
+	 * can no longer be reached, with the cause of the failure that made it impossible. Cancelling the returned future does not cancel the
+	 * entries of <code>map</code>.
+	 *
+	 * @param map the future map
+	 * @param k   the number of successful entries to wait for
+	 * @return a future of the first <code>k</code> successful entries
+	 * @throws IllegalArgumentException if <code>k</code> is negative or larger than the size of <code>map</code>
+	 */
+	public static <K, V> ListenableFuture<Map<K, V>> firstK(final Map<K, ? extends ListenableFuture<V>> map, final int k) {
+
+		checkArgument(k >= 0 && k <= map.size(), "k must be between 0 and the size of the map (%s)", map.size());
+
+		final SettableFuture<Map<K, V>> result = SettableFuture.create();
+		if (k == 0) {
+			result.set(ImmutableMap.<K, V>of());
+			return result;
+		}
+
+		final int maxFailures = map.size() - k;
+		addEntryCallback(map, new FutureMapEntryCallback<K, V>() {
+
+			private final Map<K, V> successes = new LinkedHashMap<K, V>(k);
+
+			private int failures;
+
+			@Override
+			public void onSuccess(final K key, final V value) {
+				Map<K, V> completed = null;
+				synchronized (this) {
+					if (successes.size() < k) {
+						successes.put(key, value);
+						if (successes.size() == k) {
+							completed = successes;
+						}
+					}
+				}
+				if (completed != null) {
+					result.set(completed);
+				}
+			}
+
+			@Override
+			public void onFailure(final K key, final Throwable t) {
+				final boolean impossible;
+				synchronized (this) {
+					impossible = ++failures == maxFailures + 1;
+				}
+				if (impossible) {
+					result.setException(t);
+				}
+			}
+		}, MoreExecutors.directExecutor()
+		);
+
+		return result;
+	}
+
+	/**
+	 * Returns a future which completes with the values of the first entries of <code>map</code> that complete successfully as soon as they form
+	 * a majority of the entries, see {@link #firstK(java.util.Map, int)}.
+	 *
+	 * @param map the future map
+	 * @return a future of the successful entries forming a majority
+	 */
+	public static <K, V> ListenableFuture<Map<K, V>> quorum(final Map<K, ? extends ListenableFuture<V>> map) {
+		return firstK(map, map.isEmpty() ? 0 : map.size() / 2 + 1);
+	}
+
+	/**
+	 * Returns a future which completes with the values of all entries of <code>map</code> once all of them completed successfully, or fails as
+	 * soon as the first entry fails, with the cause of that failure. Cancelling the returned future does not cancel the entries of
+	 * <code>map</code>.
+	 *
+	 * @param map the future map
+	 * @return a fail-fast future of all values
+	 */
+	public static <K, V> ListenableFuture<Map<K, V>> allAsMap(final Map<K, ? extends ListenableFuture<V>> map) {
+
+		final SettableFuture<Map<K, V>> result = SettableFuture.create();
+		if (map.isEmpty()) {
+			result.set(ImmutableMap.<K, V>of());
+			return result;
+		}
+
+		addEntryCallback(map, new FutureMapEntryCallback<K, V>() {
+
+			private final Map<K, V> values = new HashMap<K, V>(map.size() * 4 / 3 + 1);
+
+			@Override
+			public void onSuccess(final K key, final V value) {
+				final boolean complete;
+				synchronized (this) {
+					values.put(key, value);
+					complete = values.size() == map.size();
+				}
+				if (complete) {
+					result.set(values);
+				}
+			}
+
+			@Override
+			public void onFailure(final K key, final Throwable t) {
+				result.setException(t);
+			}
+		}, MoreExecutors.directExecutor()
+		);
+
+		return result;
+	}
+
+	/**
+	 * Waits at most <code>timeout</code> in total for all entries of <code>map</code> to complete and returns their values, but fails as soon as
+	 * any entry fails instead of waiting for the others.
+	 *
+	 * @param map     the future map
+	 * @param timeout the maximum time to wait for all entries
+	 * @param unit    the unit of <code>timeout</code>
+	 * @return the values of all entries
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 * @throws ExecutionException   if an entry failed, with the cause of the first failure
+	 * @throws TimeoutException     if not all entries completed within <code>timeout</code>
+	 * @throws CancellationException if an entry was cancelled
+	 */
+	public static <K, V> Map<K, V> getFailFast(final Map<K, ? extends ListenableFuture<V>> map, final long timeout, final TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		try {
+			return allAsMap(map).get(timeout, unit);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				throw (CancellationException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits at most <code>timeout</code> in total for the entries of <code>map</code> to complete and returns the values and failures of all
+	 * entries completed by then, together with the keys of the entries still pending. Failures neither abort waiting for the other entries nor
+	 * are they thrown.
+	 *
+	 * @param map     the future map
+	 * @param timeout the maximum time to wait for all entries
+	 * @param unit    the unit of <code>timeout</code>
+	 * @return the partial result
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 */
+	public static <K, V> FutureMapResult<K, V> getAll(final Map<K, ? extends ListenableFuture<V>> map, final long timeout, final TimeUnit unit)
+			throws InterruptedException {
+
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		final Map<K, V> values = new HashMap<K, V>();
+		final Map<K, Throwable> failures = new HashMap<K, Throwable>();
+		final Set<K> pending = new HashSet<K>();
+
+		for (final Map.Entry<K, ? extends ListenableFuture<V>> entry : map.entrySet()) {
+			try {
+				values.put(entry.getKey(), entry.getValue().get(remainingNanos(deadline), TimeUnit.NANOSECONDS));
+			} catch (ExecutionException e) {
+				failures.put(entry.getKey(), e.getCause());
+			} catch (CancellationException e) {
+				failures.put(entry.getKey(), e);
+			} catch (TimeoutException e) {
+				pending.add(entry.getKey());
+			}
+		}
+
+		return new FutureMapResult<K, V>(values, failures, pending);
+	}
+
+	/**
+	 * Returns the nanoseconds left until <code>deadline</code>, as returned by {@link System#nanoTime()}, or zero if it has passed.
+	 */
+	static long remainingNanos(final long deadline) {
+		return Math.max(0, deadline - System.nanoTime());
+	}
+}
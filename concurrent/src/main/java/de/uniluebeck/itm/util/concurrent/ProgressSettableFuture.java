@@ -2,9 +2,11 @@ package de.uniluebeck.itm.util.concurrent;
 
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ProgressSettableFuture<V> extends AbstractFuture<V> implements ProgressListenableFuture<V> {
 
@@ -12,11 +14,30 @@ public class ProgressSettableFuture<V> extends AbstractFuture<V> implements Prog
 		return new ProgressSettableFuture<V>();
 	}
 
+	/**
+	 * Creates a future that coalesces progress notifications: progress updates are not serialized by a lock, and each progress listener has
+	 * at most one notification pending at a time. Updates arriving while a notification is pending are not delivered individually, instead the
+	 * pending notification observes the latest progress when it runs. This keeps frequent progress updates, e.g. one per flashed block, from
+	 * flooding the listeners' executors.
+	 *
+	 * @return a new future in coalescing mode
+	 */
+	public static <V> ProgressSettableFuture<V> createCoalescing() {
+		return new ProgressSettableFuture<V>(true);
+	}
+
 	private final ReExecutableExecutionList progressExecutionList = new ReExecutableExecutionList();
 
-	private float progress = 0;
+	private final boolean coalescing;
+
+	private volatile float progress = 0;
 
 	protected ProgressSettableFuture() {
+		this(false);
+	}
+
+	protected ProgressSettableFuture(final boolean coalescing) {
+		this.coalescing = coalescing;
 	}
 
 	@Override
@@ -60,16 +81,72 @@ public class ProgressSettableFuture<V> extends AbstractFuture<V> implements Prog
 			executor.execute(runnable);
 		}
 
+		if (coalescing) {
+			progressExecutionList.add(new CoalescingListener(runnable, executor), MoreExecutors.directExecutor());
+			return;
+		}
+
 		synchronized (this) {
 			progressExecutionList.add(runnable, executor);
 		}
 	}
 
-	private synchronized boolean setProgressInternal(final float progress) {
+	private boolean setProgressInternal(final float progress) {
+
+		if (coalescing) {
+			this.progress = progress;
+			progressExecutionList.execute();
+			return true;
+		}
 
-		this.progress = progress;
-		progressExecutionList.execute();
+		synchronized (this) {
+			this.progress = progress;
+			progressExecutionList.execute();
+		}
 
 		return true;
 	}
+
+	/**
+	 * Submits a notification of a progress listener unless one is already pending. The pending flag is cleared before the listener runs, so an
+	 * update made while the listener is running results in another notification and the latest progress is never missed.
+	 */
+	private static class CoalescingListener implements Runnable {
+
+		private final Runnable listener;
+
+		private final Executor executor;
+
+		private final AtomicBoolean pending = new AtomicBoolean();
+
+		private final Runnable notification = new Runnable() {
+			@Override
+			public void run() {
+				pending.set(false);
+				listener.run();
+			}
+		};
+
+		private CoalescingListener(final Runnable listener, final Executor executor) {
+			this.listener = Preconditions.checkNotNull(listener, "Runnable was null.");
+			this.executor = Preconditions.checkNotNull(executor, "Executor was null.");
+		}
+
+		@Override
+		public void run() {
+			if (pending.compareAndSet(false, true)) {
+				try {
+					executor.execute(notification);
+				} catch (RuntimeException e) {
+					pending.set(false);
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return listener.toString();
+		}
+	}
 }
@@ -1,7 +1,9 @@
 package de.uniluebeck.itm.util.concurrent;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -11,6 +13,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.collect.Maps.newHashMap;
 
@@ -20,14 +24,45 @@ public class ProgressSettableFutureMap<K, V> implements ProgressListenableFuture
 		return new ProgressSettableFutureMap<K, V>(ImmutableMap.<K, ProgressListenableFuture<V>>of(key, value));
 	}
 
+	/**
+	 * The fixed-point scale of the member progress values, which are summed as integers so that the aggregate does not drift.
+	 */
+	private static final int PROGRESS_SCALE = 1 << 20;
+
 	protected final ImmutableMap<K, ProgressListenableFuture<V>> map;
 
+	private final CompletionCountdown completion;
+
+	private final AtomicIntegerArray memberProgress;
+
+	private final AtomicLong progressSum = new AtomicLong();
+
+	private final ReExecutableExecutionList progressExecutionList = new ReExecutableExecutionList();
+
 	public ProgressSettableFutureMap(final Map<K, ProgressListenableFuture<V>> map) {
-		this.map = ImmutableMap.copyOf(map);
+		this(ImmutableMap.copyOf(map));
 	}
 
 	public ProgressSettableFutureMap(final ImmutableMap<K, ProgressListenableFuture<V>> map) {
 		this.map = map;
+		this.completion = new CompletionCountdown(map.values());
+		this.memberProgress = new AtomicIntegerArray(map.size());
+		int index = 0;
+		for (ProgressListenableFuture<V> future : map.values()) {
+			final MemberProgressListener listener = new MemberProgressListener(future, index++);
+			future.addProgressListener(listener, MoreExecutors.directExecutor());
+			future.addListener(listener, MoreExecutors.directExecutor());
+			// seeds the aggregate with the progress the member made before the map was built
+			listener.run();
+		}
+		// the completion is notified independently of member progress, which may already be full before a member is done
+		completion.addListener(new Runnable() {
+			@Override
+			public void run() {
+				progressExecutionList.execute();
+			}
+		}, MoreExecutors.directExecutor()
+		);
 	}
 
 	@Override
@@ -51,12 +86,7 @@ public class ProgressSettableFutureMap<K, V> implements ProgressListenableFuture
 
 	@Override
 	public boolean isDone() {
-		for (final ListenableFuture<V> future : map.values()) {
-			if (!future.isDone()) {
-				return false;
-			}
-		}
-		return true;
+		return completion.isDone();
 	}
 
 	@Override
@@ -76,10 +106,11 @@ public class ProgressSettableFutureMap<K, V> implements ProgressListenableFuture
 	public Map<K, V> get(final long timeout, final TimeUnit unit)
 			throws InterruptedException, ExecutionException, TimeoutException {
 
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
 		final HashMap<K, V> retMap = newHashMap();
 
 		for (final Entry<K, ProgressListenableFuture<V>> entry : map.entrySet()) {
-			retMap.put(entry.getKey(), entry.getValue().get(timeout, unit));
+			retMap.put(entry.getKey(), entry.getValue().get(ListenableFutureMaps.remainingNanos(deadline), TimeUnit.NANOSECONDS));
 		}
 
 		return retMap;
@@ -147,67 +178,105 @@ public class ProgressSettableFutureMap<K, V> implements ProgressListenableFuture
 
 	@Override
 	public void addListener(final Runnable listener, final Executor executor) {
-
-		if (map.isEmpty() || isDone()) {
-			executor.execute(listener);
-			return;
-		}
-
-		for (final ListenableFuture<V> future : map.values()) {
-			future.addListener(
-					new IndividualProgressFutureListener(executor, listener),
-					executor
-			);
-		}
+		completion.addListener(listener, executor);
 	}
 
+	/**
+	 * Returns the average progress of the member futures. The average is kept up to date incrementally whenever a member reports progress, so
+	 * calling this method is cheap regardless of the size of the map.
+	 */
 	@Override
 	public float getProgress() {
 		if (isDone()) {
 			return 1.0f;
 		}
-		float overallProgress = 0f;
-		for (ProgressListenableFuture<V> future : map.values()) {
-			overallProgress += future.getProgress();
-		}
-		return overallProgress / map.size();
+		return (float) ((double) progressSum.get() / ((long) PROGRESS_SCALE * map.size()));
 	}
 
+	/**
+	 * Adds a listener which is notified whenever the progress of a member future changes, and once more when the map is done.
+	 * A listener added while the map completes may be notified of the completion twice, but never misses it.
+	 */
 	@Override
 	public void addProgressListener(final Runnable listener, final Executor executor) {
 
-		if (map.isEmpty() || isDone()) {
+		if (isDone()) {
 			executor.execute(listener);
 			return;
 		}
 
-		for (final ProgressListenableFuture<V> future : map.values()) {
-			future.addProgressListener(
-					new IndividualProgressFutureListener(executor, listener),
-					executor
-			);
+		progressExecutionList.add(listener, executor);
+
+		// the execution list does not replay the final notification to listeners added after it
+		if (isDone()) {
+			executor.execute(listener);
 		}
 	}
 
-	private class IndividualProgressFutureListener implements Runnable {
+	/**
+	 * Adds a listener which receives the new aggregate progress whenever the progress of a member future changes, see
+	 * {@link #addProgressListener(Runnable, java.util.concurrent.Executor)}. The progress passed to the listener is the aggregate at the time
+	 * the listener runs, so a listener running late observes the latest progress.
+	 *
+	 * @param listener the listener
+	 * @param executor the executor running the listener
+	 */
+	public void addProgressListener(final AggregateProgressListener listener, final Executor executor) {
+		Preconditions.checkNotNull(listener, "Listener was null.");
+		addProgressListener(new Runnable() {
+			@Override
+			public void run() {
+				listener.progressChanged(getProgress());
+			}
+
+			@Override
+			public String toString() {
+				return listener.toString();
+			}
+		}, executor
+		);
+	}
+
+	/**
+	 * Adds the progress delta of a single member future to the aggregate and notifies the progress listeners of the map if the aggregate changed.
+	 */
+	private class MemberProgressListener implements Runnable {
 
-		private final Runnable listener;
+		private final ProgressListenableFuture<V> future;
 
-		private final Executor executor;
+		private final int index;
 
-		private IndividualProgressFutureListener(final Executor executor, final Runnable listener) {
-			this.executor = executor;
-			this.listener = listener;
+		private MemberProgressListener(final ProgressListenableFuture<V> future, final int index) {
+			this.future = future;
+			this.index = index;
 		}
 
+		/**
+		 * Runs as progress and as completion listener, possibly on different threads at the same time. The progress is
+		 * updated by compare-and-set and re-read on conflicts, and the full progress of a done member is never overwritten,
+		 * so that a stale progress value read before completion can't replace it. Once the map is done, the progress
+		 * listeners of the map have been notified by the completion, so they are not notified again.
+		 */
 		@Override
 		public void run() {
-			for (ProgressListenableFuture<V> future : map.values()) {
-				if (!future.isDone()) {
+			while (true) {
+				final int previous = memberProgress.get(index);
+				if (previous == PROGRESS_SCALE) {
+					return;
+				}
+				final float progress = future.isDone() ? 1f : future.getProgress();
+				final int scaled = (int) (progress * PROGRESS_SCALE);
+				if (scaled == previous) {
+					return;
+				}
+				if (memberProgress.compareAndSet(index, previous, scaled)) {
+					progressSum.addAndGet(scaled - previous);
+					if (!completion.isDone()) {
+						progressExecutionList.execute();
+					}
 					return;
 				}
 			}
-			executor.execute(listener);
 		}
 	}
 }
@@ -15,7 +15,11 @@ public class ReExecutableExecutionList {
 
 	private final Lock runnablesLock = new ReentrantLock();
 
-	private ImmutableList<RunnableExecutorPair> runnables = ImmutableList.of();
+	/**
+	 * Replaced as a whole on every add, and volatile so that {@link #execute()} sees listeners added on other threads
+	 * without taking the lock.
+	 */
+	private volatile ImmutableList<RunnableExecutorPair> runnables = ImmutableList.of();
 
 	public ReExecutableExecutionList() {
 	}
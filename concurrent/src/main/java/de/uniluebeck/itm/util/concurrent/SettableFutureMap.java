@@ -17,16 +17,20 @@ public class SettableFutureMap<K, V> implements ListenableFutureMap<K, V> {
 
 	protected final ImmutableMap<K, ListenableFuture<V>> map;
 
+	private final CompletionCountdown completion;
+
 	public static <K, V> SettableFutureMap<K, V> of(K key, ListenableFuture<V> valueFuture) {
 		return new SettableFutureMap<K, V>(ImmutableMap.of(key, valueFuture));
 	}
 
 	public SettableFutureMap(final Map<K, ? extends ListenableFuture<V>> map) {
 		this.map = ImmutableMap.copyOf(map);
+		this.completion = new CompletionCountdown(this.map.values());
 	}
 
 	public SettableFutureMap(final ImmutableMap<K, ListenableFuture<V>> map) {
 		this.map = map;
+		this.completion = new CompletionCountdown(map.values());
 	}
 
 	@Override
@@ -50,12 +54,7 @@ public class SettableFutureMap<K, V> implements ListenableFutureMap<K, V> {
 
 	@Override
 	public boolean isDone() {
-		for (final ListenableFuture<V> future : map.values()) {
-			if (!future.isDone()) {
-				return false;
-			}
-		}
-		return true;
+		return completion.isDone();
 	}
 
 	@Override
@@ -75,10 +74,11 @@ public class SettableFutureMap<K, V> implements ListenableFutureMap<K, V> {
 	public Map<K, V> get(final long timeout, final TimeUnit unit)
 			throws InterruptedException, ExecutionException, TimeoutException {
 
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
 		final HashMap<K, V> retMap = Maps.newHashMap();
 
 		for (final Entry<K, ListenableFuture<V>> entry : map.entrySet()) {
-			retMap.put(entry.getKey(), entry.getValue().get(timeout, unit));
+			retMap.put(entry.getKey(), entry.getValue().get(ListenableFutureMaps.remainingNanos(deadline), TimeUnit.NANOSECONDS));
 		}
 
 		return retMap;
@@ -148,40 +148,6 @@ public class SettableFutureMap<K, V> implements ListenableFutureMap<K, V> {
 
 	@Override
 	public void addListener(final Runnable listener, final Executor executor) {
-
-		if (map.isEmpty() || isDone()) {
-			executor.execute(listener);
-			return;
-		}
-
-		for (final ListenableFuture<V> future : map.values()) {
-			future.addListener(
-					new IndividualFutureListener(executor, listener),
-					executor
-			);
-		}
-	}
-
-	private class IndividualFutureListener implements Runnable {
-
-		private final Runnable listener;
-
-		private final Executor executor;
-
-		private IndividualFutureListener(final Executor executor,
-										 final Runnable listener) {
-			this.executor = executor;
-			this.listener = listener;
-		}
-
-		@Override
-		public void run() {
-			for (ListenableFuture<V> future : map.values()) {
-				if (!future.isDone()) {
-					return;
-				}
-			}
-			executor.execute(listener);
-		}
+		completion.addListener(listener, executor);
 	}
 }
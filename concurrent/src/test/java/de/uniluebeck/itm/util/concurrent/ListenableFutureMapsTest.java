@@ -0,0 +1,170 @@
+package de.uniluebeck.itm.util.concurrent;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ListenableFutureMapsTest {
+
+	private static final ListeningExecutorService STE = MoreExecutors.sameThreadExecutor();
+
+	private SettableFuture<String> future1;
+
+	private SettableFuture<String> future2;
+
+	private SettableFuture<String> future3;
+
+	private Map<Integer, ListenableFuture<String>> map;
+
+	@Mock
+	private FutureMapEntryCallback<Integer, String> callback;
+
+	@Before
+	public void setUp() throws Exception {
+		future1 = SettableFuture.create();
+		future2 = SettableFuture.create();
+		future3 = SettableFuture.create();
+		map = ImmutableMap.<Integer, ListenableFuture<String>>of(1, future1, 2, future2, 3, future3);
+	}
+
+	@Test
+	public void testEntryCallbackIsNotifiedInCompletionOrder() throws Exception {
+
+		final Exception failure = new Exception();
+		ListenableFutureMaps.addEntryCallback(map, callback, STE);
+		verifyZeroInteractions(callback);
+
+		future3.set("3");
+		future1.setException(failure);
+		future2.set("2");
+
+		final InOrder inOrder = inOrder(callback);
+		inOrder.verify(callback).onSuccess(3, "3");
+		inOrder.verify(callback).onFailure(1, failure);
+		inOrder.verify(callback).onSuccess(2, "2");
+	}
+
+	@Test
+	public void testIteratorReturnsEntriesInCompletionOrder() throws Exception {
+
+		future2.set("2");
+		final Iterator<Map.Entry<Integer, ListenableFuture<String>>> iterator = ListenableFutureMaps.inCompletionOrder(map);
+		future3.set("3");
+		future1.set("1");
+
+		assertEquals(2, (int) iterator.next().getKey());
+		assertEquals(3, (int) iterator.next().getKey());
+		final Map.Entry<Integer, ListenableFuture<String>> last = iterator.next();
+		assertEquals(1, (int) last.getKey());
+		assertEquals("1", last.getValue().get());
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testFirstKCompletesWithFirstSuccessfulEntries() throws Exception {
+
+		final ListenableFuture<Map<Integer, String>> firstK = ListenableFutureMaps.firstK(map, 2);
+
+		future2.setException(new Exception());
+		future3.set("3");
+		assertFalse(firstK.isDone());
+
+		future1.set("1");
+		assertEquals(ImmutableMap.of(3, "3", 1, "1"), firstK.get());
+	}
+
+	@Test
+	public void testFirstKFailsAsSoonAsItCanNoLongerBeReached() throws Exception {
+
+		final ListenableFuture<Map<Integer, String>> firstK = ListenableFutureMaps.firstK(map, 2);
+		final Exception failure = new Exception();
+
+		future1.setException(new Exception());
+		assertFalse(firstK.isDone());
+
+		future3.setException(failure);
+		try {
+			firstK.get();
+			fail("ExecutionException expected");
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	@Test
+	public void testQuorumCompletesWithMajority() throws Exception {
+
+		final ListenableFuture<Map<Integer, String>> quorum = ListenableFutureMaps.quorum(map);
+
+		future1.set("1");
+		assertFalse(quorum.isDone());
+
+		future2.set("2");
+		assertEquals(ImmutableMap.of(1, "1", 2, "2"), quorum.get());
+	}
+
+	@Test
+	public void testQuorumOfEmptyMapIsDoneImmediately() throws Exception {
+		final ListenableFuture<Map<Integer, String>> quorum =
+				ListenableFutureMaps.quorum(ImmutableMap.<Integer, ListenableFuture<String>>of());
+		assertTrue(quorum.get().isEmpty());
+	}
+
+	@Test
+	public void testGetFailFastFailsOnFirstFailureWithoutWaitingForOtherEntries() throws Exception {
+
+		final Exception failure = new Exception();
+		future3.setException(failure);
+
+		try {
+			ListenableFutureMaps.getFailFast(map, 1, TimeUnit.MINUTES);
+			fail("ExecutionException expected");
+		} catch (ExecutionException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	@Test
+	public void testGetFailFastReturnsAllValues() throws Exception {
+
+		future1.set("1");
+		future2.set("2");
+		future3.set("3");
+
+		assertEquals(ImmutableMap.of(1, "1", 2, "2", 3, "3"), ListenableFutureMaps.getFailFast(map, 1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testGetAllCollectsValuesFailuresAndPendingEntries() throws Exception {
+
+		final Exception failure = new Exception();
+		future1.set("1");
+		future2.setException(failure);
+
+		final FutureMapResult<Integer, String> result = ListenableFutureMaps.getAll(map, 10, TimeUnit.MILLISECONDS);
+
+		assertEquals(ImmutableMap.of(1, "1"), result.getValues());
+		assertEquals(ImmutableMap.<Integer, Throwable>of(2, failure), result.getFailures());
+		assertEquals(ImmutableSet.of(3), result.getPending());
+		assertFalse(result.isSuccessful());
+	}
+}
@@ -0,0 +1,219 @@
+package de.uniluebeck.itm.util.concurrent;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProgressSettableFutureMapTest {
+
+	private ProgressSettableFuture<Object> future1;
+
+	private ProgressSettableFuture<Object> future2;
+
+	private ProgressSettableFutureMap<Integer, Object> map;
+
+	@Mock
+	private Runnable listener;
+
+	@Mock
+	private AggregateProgressListener aggregateListener;
+
+	@Before
+	public void setUp() throws Exception {
+		future1 = ProgressSettableFuture.create();
+		future2 = ProgressSettableFuture.create();
+		map = new ProgressSettableFutureMap<Integer, Object>(
+				ImmutableMap.<Integer, ProgressListenableFuture<Object>>of(1, future1, 2, future2)
+		);
+	}
+
+	@Test
+	public void testProgressIsAverageOfMemberProgress() throws Exception {
+
+		assertEquals(0f, map.getProgress(), 0f);
+
+		future1.setProgress(0.5f);
+		assertEquals(0.25f, map.getProgress(), 0.0001f);
+
+		future2.setProgress(0.25f);
+		assertEquals(0.375f, map.getProgress(), 0.0001f);
+
+		future1.set(new Object());
+		assertEquals(0.625f, map.getProgress(), 0.0001f);
+
+		future2.set(new Object());
+		assertEquals(1f, map.getProgress(), 0f);
+	}
+
+	@Test
+	public void testStaleProgressDoesNotOverwriteCompletedMember() throws Exception {
+
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch completed = new CountDownLatch(1);
+		final Thread reporter = new Thread("reporter") {
+			@Override
+			public void run() {
+				future1.setProgress(0.5f);
+			}
+		};
+
+		// reads the progress of the reporting thread only after the member completed on the main thread
+		final ProgressSettableFuture<Object> member = new ProgressSettableFuture<Object>(true) {
+			@Override
+			public float getProgress() {
+				final float progress = super.getProgress();
+				if (Thread.currentThread() == reporter) {
+					reading.countDown();
+					Uninterruptibles.awaitUninterruptibly(completed);
+				}
+				return progress;
+			}
+		};
+		future1 = member;
+		map = new ProgressSettableFutureMap<Integer, Object>(
+				ImmutableMap.<Integer, ProgressListenableFuture<Object>>of(1, member, 2, future2)
+		);
+		member.addListener(new Runnable() {
+			@Override
+			public void run() {
+				completed.countDown();
+			}
+		}, sameThreadExecutor()
+		);
+
+		reporter.start();
+		reading.await();
+		member.set(new Object());
+		reporter.join();
+
+		assertEquals(0.5f, map.getProgress(), 0.0001f);
+	}
+
+	@Test
+	public void testProgressMadeBeforeConstructionIsIncluded() throws Exception {
+
+		future1.setProgress(0.8f);
+		future2.setProgress(0.8f);
+		map = new ProgressSettableFutureMap<Integer, Object>(
+				ImmutableMap.<Integer, ProgressListenableFuture<Object>>of(1, future1, 2, future2)
+		);
+
+		assertEquals(0.8f, map.getProgress(), 0.0001f);
+
+		future1.setProgress(0.9f);
+		assertEquals(0.85f, map.getProgress(), 0.0001f);
+	}
+
+	@Test
+	public void testProgressListenerIsNotifiedOnCompletionAfterFullProgress() throws Exception {
+
+		final List<Boolean> doneOnNotification = new ArrayList<Boolean>();
+		map.addProgressListener(new Runnable() {
+			@Override
+			public void run() {
+				doneOnNotification.add(map.isDone());
+			}
+		}, sameThreadExecutor()
+		);
+
+		future2.set(new Object());
+		future1.setProgress(1f);
+		future1.set(new Object());
+
+		assertEquals(Arrays.asList(false, false, true), doneOnNotification);
+	}
+
+	@Test
+	public void testProgressListenerIsNotifiedOnMemberProgress() throws Exception {
+
+		map.addProgressListener(listener, sameThreadExecutor());
+
+		future1.setProgress(0.5f);
+		verify(listener, times(1)).run();
+
+		future2.setProgress(0.5f);
+		verify(listener, times(2)).run();
+	}
+
+	@Test
+	public void testProgressListenerIsNotNotifiedIfProgressDidNotChange() throws Exception {
+
+		future1.setProgress(0.5f);
+		map.addProgressListener(listener, sameThreadExecutor());
+
+		future1.setProgress(0.5f);
+		verify(listener, never()).run();
+	}
+
+	@Test
+	public void testAggregateProgressListenerReceivesAggregateProgress() throws Exception {
+
+		map.addProgressListener(aggregateListener, sameThreadExecutor());
+
+		future1.setProgress(0.5f);
+		future2.set(new Object());
+		future1.set(new Object());
+
+		final InOrder inOrder = inOrder(aggregateListener);
+		inOrder.verify(aggregateListener).progressChanged(0.25f);
+		inOrder.verify(aggregateListener).progressChanged(0.75f);
+		inOrder.verify(aggregateListener).progressChanged(1f);
+	}
+
+	@Test
+	public void testProgressListenerOnCompletedMapIsImmediatelyNotified() throws Exception {
+
+		future1.set(new Object());
+		future2.set(new Object());
+
+		map.addProgressListener(listener, sameThreadExecutor());
+		verify(listener, times(1)).run();
+	}
+
+	@Test
+	public void testProgressListenerAddedWhileMapCompletesIsNotified() throws Exception {
+
+		future1.set(new Object());
+		final boolean[] completeOnNextCheck = {true};
+		map = new ProgressSettableFutureMap<Integer, Object>(
+				ImmutableMap.<Integer, ProgressListenableFuture<Object>>of(1, future1, 2, future2)
+		) {
+			@Override
+			public boolean isDone() {
+				final boolean done = super.isDone();
+				// the last member completes right after the first check of addProgressListener
+				if (completeOnNextCheck[0]) {
+					completeOnNextCheck[0] = false;
+					future2.set(new Object());
+				}
+				return done;
+			}
+		};
+
+		map.addProgressListener(listener, sameThreadExecutor());
+		verify(listener, atLeastOnce()).run();
+	}
+
+	@Test
+	public void testEmptyMapIsDoneWithFullProgress() throws Exception {
+		final ProgressSettableFutureMap<Integer, Object> empty =
+				new ProgressSettableFutureMap<Integer, Object>(ImmutableMap.<Integer, ProgressListenableFuture<Object>>of());
+		assertTrue(empty.isDone());
+		assertEquals(1f, empty.getProgress(), 0f);
+	}
+}
@@ -2,6 +2,10 @@ package de.uniluebeck.itm.util.concurrent;
 
 import org.junit.Test;
 
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
 import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -106,4 +110,47 @@ public class ProgressSettableFutureTest {
 		assertTrue(future.set(null));
 		assertEquals(1f, future.getProgress(), 0f);
 	}
+
+	@Test
+	public void testThatCoalescingFutureHasAtMostOneNotificationPendingPerListener() throws Exception {
+
+		final ProgressSettableFuture<Void> future = ProgressSettableFuture.createCoalescing();
+		final Queue<Runnable> pending = new LinkedList<Runnable>();
+		final Executor queueingExecutor = new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				pending.add(command);
+			}
+		};
+
+		final Runnable mock1 = mock(Runnable.class);
+		future.addProgressListener(mock1, queueingExecutor);
+
+		for (int i = 1; i <= 100; i++) {
+			future.setProgress(i / 200f);
+		}
+		assertEquals(1, pending.size());
+
+		pending.poll().run();
+		verify(mock1, times(1)).run();
+		assertEquals(0.5f, future.getProgress(), 0f);
+
+		future.setProgress(0.6f);
+		assertEquals(1, pending.size());
+	}
+
+	@Test
+	public void testThatCoalescingFutureNotifiesListenersOnCompletion() throws Exception {
+
+		final ProgressSettableFuture<Void> future = ProgressSettableFuture.createCoalescing();
+
+		final Runnable mock1 = mock(Runnable.class);
+		future.addProgressListener(mock1, sameThreadExecutor());
+
+		future.setProgress(0.5f);
+		assertTrue(future.set(null));
+
+		verify(mock1, times(2)).run();
+		assertEquals(1f, future.getProgress(), 0f);
+	}
 }
@@ -1,6 +1,7 @@
 package de.uniluebeck.itm.util.concurrent;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -12,10 +13,17 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -245,6 +253,71 @@ public class SettableFutureMapTest {
 		verify(listener).run();
 	}
 
+	@Test
+	public void testListenerIsNotifiedOnceIfEntriesCompleteConcurrently() throws Exception {
+
+		final int entries = 1000;
+		final Map<Object, ListenableFuture<Object>> futures = Maps.newHashMap();
+		final List<SettableFuture<Object>> incompleteFutures = Lists.newArrayList();
+		for (int i = 0; i < entries; i++) {
+			final SettableFuture<Object> future = SettableFuture.create();
+			futures.put(i, future);
+			incompleteFutures.add(future);
+		}
+
+		final SettableFutureMap<Object, Object> map = map(futures);
+		map.addListener(listener, STE);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (final SettableFuture<Object> future : incompleteFutures) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						future.set(future);
+					}
+				}
+				);
+			}
+			start.countDown();
+		} finally {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+
+		assertTrue(map.isDone());
+		verify(listener, times(1)).run();
+	}
+
+	@Test
+	public void testListenerAddedAfterCompletionIsNotifiedOnce() throws Exception {
+
+		final SettableFutureMap<Object, Object> map = map(mapWithMultipleEntriesAndOneIncompleteEntry);
+		incompleteFuture3.set(new Object());
+
+		map.addListener(listener, STE);
+		verify(listener, times(1)).run();
+	}
+
+	@Test
+	public void testGetWithTimeoutSharesTimeoutAcrossEntries() throws Exception {
+
+		final long start = System.nanoTime();
+		try {
+			map(mapWithMultipleIncompleteEntries).get(100, TimeUnit.MILLISECONDS);
+			fail("TimeoutException expected");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+	}
+
 	@Test
 	public void testMapReturnedContainsSameValuesAsEntryFutures() throws Exception {
 
@@ -0,0 +1,25 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Optional interface for deserializer functions registered at a {@link MultiClassSerializationHelper}.
+ * <p/>
+ * If a deserializer function additionally implements this interface, the helper passes the serialization to it as a buffer instead of copying it into a new array
+ * and calling {@link com.google.common.base.Function#apply(Object)}.
+ *
+ * @param <T> the type of objects deserialized by this deserializer
+ */
+public interface ByteBufferDeserializer<T> {
+
+    /**
+     * Reads an object from <code>source</code>. The serialization spans from the current position to the limit of the buffer.
+     * Implementations may read the buffer using relative or absolute methods and need not advance its position.
+     * The buffer must not be retained after returning, as it may be a view of a reused buffer.
+     *
+     * @param source the buffer containing the serialization
+     * @return the deserialized object
+     */
+    T deserialize(ByteBuffer source);
+
+}
@@ -0,0 +1,25 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Optional interface for serializer functions registered at a {@link MultiClassSerializationHelper}.
+ * <p/>
+ * If a serializer function additionally implements this interface, {@link MultiClassSerializationHelper#serialize(Object, java.nio.ByteBuffer)}
+ * lets it write directly into the target buffer instead of calling {@link com.google.common.base.Function#apply(Object)} and copying the resulting array.
+ *
+ * @param <T> the type of objects serialized by this serializer
+ */
+public interface ByteBufferSerializer<T> {
+
+    /**
+     * Writes the serialization of <code>object</code> into <code>target</code>, starting at its current position and advancing the position by the number of bytes written.
+     * The bytes written must be the same as the ones returned by the function's <code>apply</code> method.
+     *
+     * @param object the object to serialize
+     * @param target the buffer to write to
+     * @throws java.nio.BufferOverflowException if <code>target</code> has not enough space remaining
+     */
+    void serialize(T object, ByteBuffer target);
+
+}
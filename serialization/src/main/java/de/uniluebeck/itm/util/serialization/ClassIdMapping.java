@@ -0,0 +1,233 @@
+package de.uniluebeck.itm.util.serialization;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.google.common.io.Files;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pre-resolved class-id-mapping for fast construction of {@link MultiClassSerializationHelper}s, see
+ * {@link MultiClassSerializationHelper#buildHelperWithClassIdMapping(java.util.Map, java.util.Map, ClassIdMapping)}.
+ * <p/>
+ * Mappings are stored in a compact binary format: a four byte magic number, a version byte and the number of entries, followed by the id,
+ * the length of the UTF-8 encoded class name and the class name of each entry. Binary mapping files are loaded from a memory mapped file and their
+ * classes are resolved without initializing them. The CSV format of {@link MultiClassSerializationHelper#storeClassIdMap(java.io.File, com.google.common.collect.BiMap)}
+ * remains the human-editable source of a mapping, which can be compiled into the binary format using {@link #compile(java.io.File, java.io.File)}.
+ * <p/>
+ * Instances are immutable.
+ */
+public final class ClassIdMapping {
+
+    static final int MAGIC = 0x4D43534D;
+
+    static final byte VERSION = 1;
+
+    private final Class<?>[] types;
+
+    private final int[] ids;
+
+    private ClassIdMapping(Class<?>[] types, int[] ids) {
+        this.types = types;
+        this.ids = ids;
+    }
+
+    /**
+     * Creates a mapping containing the entries of <code>classIdMap</code>.
+     *
+     * @param classIdMap the class-id-mapping
+     * @return a new mapping
+     * @throws IllegalArgumentException if an id is outside of <code>Byte.MIN_VALUE</code> and {@link MultiClassSerializationHelper#MAX_TYPE_ID}
+     */
+    public static ClassIdMapping of(Map<? extends Class<?>, Integer> classIdMap) throws IllegalArgumentException {
+        Class<?>[] types = new Class<?>[classIdMap.size()];
+        int[] ids = new int[classIdMap.size()];
+        int i = 0;
+        for (Map.Entry<? extends Class<?>, Integer> entry : classIdMap.entrySet()) {
+            types[i] = entry.getKey();
+            ids[i] = checkId(entry.getValue());
+            i++;
+        }
+        return new ClassIdMapping(types, ids);
+    }
+
+    /**
+     * Loads a mapping from a binary mapping file.
+     *
+     * @param binaryFile the file written by {@link #store(java.io.File)}
+     * @return the loaded mapping
+     * @throws FileNotFoundException  if the file does not exist
+     * @throws IOException            if the file can't be read or is not a valid binary mapping file
+     * @throws ClassNotFoundException if the file specifies one or many non existing class(es)
+     */
+    public static ClassIdMapping load(File binaryFile) throws IOException, ClassNotFoundException {
+        ByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(binaryFile, "r");
+        try {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary mapping file (" + binaryFile.getAbsolutePath() + ")");
+            }
+            final byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported mapping file version " + version);
+            }
+            final int size = buffer.getInt();
+            if (size < 0 || size > buffer.remaining()) {
+                throw new IOException("Invalid number of mapping entries " + size);
+            }
+
+            ClassLoader classLoader = ClassIdMapping.class.getClassLoader();
+            Class<?>[] types = new Class<?>[size];
+            int[] ids = new int[size];
+            List<String> notFoundClasses = new ArrayList<String>();
+            byte[] name = new byte[256];
+            for (int i = 0; i < size; i++) {
+                ids[i] = checkId(buffer.getInt());
+                final int length = buffer.getShort() & 0xFFFF;
+                if (name.length < length) {
+                    name = new byte[length];
+                }
+                buffer.get(name, 0, length);
+                String className = new String(name, 0, length, Charsets.UTF_8);
+                try {
+                    // static initializers run on first use instead of at startup
+                    types[i] = Class.forName(className, false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    notFoundClasses.add(className);
+                }
+            }
+
+            if (notFoundClasses.size() > 0) {
+                throw new ClassNotFoundException("Unknown classes in mapping file. Recompile the mapping file from its source if appropriate.\nUnknown Classes: " + notFoundClasses);
+            }
+            return new ClassIdMapping(types, ids);
+
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Mapping file is truncated (" + binaryFile.getAbsolutePath() + ")");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid mapping file (" + binaryFile.getAbsolutePath() + ")", e);
+        }
+    }
+
+    /**
+     * Compiles a CSV mapping file into a binary mapping file.
+     *
+     * @param csvFile    the mapping file in the format of {@link MultiClassSerializationHelper#loadClassIdMap(java.io.File)}
+     * @param binaryFile the binary mapping file to write
+     * @return the compiled mapping
+     * @throws IOException            if reading or writing fails
+     * @throws ClassNotFoundException if the CSV file specifies one or many non existing class(es)
+     */
+    public static ClassIdMapping compile(File csvFile, File binaryFile) throws IOException, ClassNotFoundException {
+        ClassIdMapping mapping = of(MultiClassSerializationHelper.<Object>loadClassIdMap(csvFile));
+        mapping.store(binaryFile);
+        return mapping;
+    }
+
+    /**
+     * Loads the binary mapping file if it is at least as recent as the CSV mapping file, and compiles the CSV mapping file into the binary mapping file otherwise.
+     *
+     * @param csvFile    the mapping file in the format of {@link MultiClassSerializationHelper#loadClassIdMap(java.io.File)}
+     * @param binaryFile the binary mapping file
+     * @return the loaded mapping
+     * @throws IOException            if reading or writing fails
+     * @throws ClassNotFoundException if the mapping specifies one or many non existing class(es)
+     */
+    public static ClassIdMapping loadOrCompile(File csvFile, File binaryFile) throws IOException, ClassNotFoundException {
+        if (binaryFile.isFile() && binaryFile.lastModified() >= csvFile.lastModified()) {
+            return load(binaryFile);
+        }
+        return compile(csvFile, binaryFile);
+    }
+
+    /**
+     * Writes this mapping to a binary mapping file.
+     *
+     * @param binaryFile the file to write
+     * @throws IOException if writing fails
+     */
+    public void store(File binaryFile) throws IOException {
+        Files.createParentDirs(binaryFile);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(types.length);
+            for (int i = 0; i < types.length; i++) {
+                byte[] name = types[i].getName().getBytes(Charsets.UTF_8);
+                out.writeInt(ids[i]);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * Returns the class of entry <code>index</code>.
+     *
+     * @param index the index of the entry
+     * @return the class
+     */
+    public Class<?> getType(int index) {
+        return types[index];
+    }
+
+    /**
+     * Returns the id of entry <code>index</code>.
+     *
+     * @param index the index of the entry
+     * @return the id
+     */
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the entries as a class-id-mapping.
+     *
+     * @return a new bidirectional map
+     * @throws IllegalArgumentException if this mapping contains duplicate classes or ids
+     */
+    public BiMap<Class<?>, Integer> toClassIdMap() throws IllegalArgumentException {
+        BiMap<Class<?>, Integer> map = HashBiMap.create(types.length);
+        for (int i = 0; i < types.length; i++) {
+            if (map.containsKey(types[i])) {
+                throw new IllegalArgumentException("Duplicate class " + types[i].getName());
+            }
+            map.put(types[i], ids[i]);
+        }
+        return map;
+    }
+
+    private static int checkId(int id) throws IllegalArgumentException {
+        if (id < Byte.MIN_VALUE || id > MultiClassSerializationHelper.MAX_TYPE_ID) {
+            throw new IllegalArgumentException("Type id " + id + " is out of range");
+        }
+        return id;
+    }
+}
@@ -4,17 +4,32 @@ package de.uniluebeck.itm.util.serialization;
 import com.google.common.base.Function;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * This class provides the ability to serialize different classes into byte arrays and vice versa.
  * <p/>
  * The serialization of an object according to this helper is a byte array containing a type byte at the first position and the byte serialization of the object given by the serializer functions afterwards.
+ * Helpers for more than {@link #MAX_NUMBER_OF_SERIALIZERS} classes are built with a class-id-mapping instead of a class-byte-mapping, see
+ * {@link #buildHelperWithClassIdMap(java.util.Map, java.util.Map, com.google.common.collect.BiMap)}. Their type header is still a single byte for all but the largest ids.
+ * <p/>
+ * Besides byte arrays, objects can be serialized into and deserialized from caller-supplied {@link ByteBuffer}s. Serializer and deserializer functions that additionally
+ * implement {@link ByteBufferSerializer} or {@link ByteBufferDeserializer} then read and write the buffers directly, without intermediate arrays.
+ * Types whose serializer implements {@link VersionedSerializer} carry a version byte behind the type header, and deserializers implementing {@link ViewDeserializer}
+ * give lazy access to serializations via {@link #view(java.nio.ByteBuffer)}.
  * <p/>
  * Due to the fact, that the multiple map iterator uses may yield in different order of the contained values,
  * it's not sufficient to generate the "type byte" <-> "class type" map at initialization time of this helper because previously serialized objects might not be deserializable any more. Hence the constructor of this class expects the mapping as a bidirectional map.
@@ -33,72 +48,263 @@ import java.util.*;
 @SuppressWarnings({"UnusedDeclaration", "ResultOfMethodCallIgnored"})
 public class MultiClassSerializationHelper<T> {
     public static final int MAX_NUMBER_OF_SERIALIZERS = (int) Byte.MAX_VALUE - (int) Byte.MIN_VALUE;
+    /**
+     * The largest type id of a class-id-mapping. Type ids start at <code>Byte.MIN_VALUE</code>, so up to <code>MAX_TYPE_ID - Byte.MIN_VALUE</code> classes
+     * are supported, as one type byte is left unassigned to mark ids beyond the byte range.
+     */
+    public static final int MAX_TYPE_ID = 0xFFFF;
+    /**
+     * The first id beyond the byte range. If a mapping contains such ids, they are written as the marker type byte followed by the id minus <code>FIRST_EXTENDED_TYPE_ID</code>
+     * as a {@link VarInts variable length integer}. The marker is the largest type byte not assigned to a class, so that all ids within the byte range are still written as
+     * a single type byte and serializations written with a class-byte-mapping remain readable.
+     */
+    private static final int FIRST_EXTENDED_TYPE_ID = Byte.MAX_VALUE + 1;
+    /**
+     * The minimum number of objects per task of the parallel batch methods, smaller batches are processed by fewer tasks.
+     */
+    private static final int MIN_OBJECTS_PER_TASK = 256;
     private static Logger log = LoggerFactory.
             getLogger(MultiClassSerializationHelper.class);
 
-    private Map<Class<? extends T>, Function<? extends T, byte[]>> serializers;
-    private Map<Byte, Function<byte[], ? extends T>> deserializers;
+    /**
+     * The class-id-mapping, which is <code>null</code> if this helper was built with a pre-resolved {@link ClassIdMapping}.
+     */
+    private final BiMap<Class<? extends T>, Integer> ids;
+    private final ClassIdMapping classIdMapping;
+    /**
+     * The class-byte-mapping passed to the constructor or <code>null</code> if this helper was built with a class-id-mapping.
+     */
     private final BiMap<Class<? extends T>, Byte> mapping;
+    private final boolean extendedTypeIds;
+    /**
+     * The type byte preceding extended ids, only valid if {@link #extendedTypeIds} is set.
+     */
+    private final byte extendedTypeIdMarker;
+
+    /**
+     * Serializers by type, built from the maps above at the end of construction. The map is only read afterwards, so
+     * lookups from concurrent threads need no synchronization and do not write to shared memory.
+     */
+    private final Map<Class<?>, SerializerSlot> serializerSlots = new IdentityHashMap<Class<?>, SerializerSlot>();
+
+    /**
+     * The metrics sink or <code>null</code> if metrics are disabled, which is checked before taking any measurement.
+     */
+    private volatile SerializationMetrics metrics;
+
+    /**
+     * Deserializers indexed by the unsigned type byte.
+     */
+    private final DeserializerSlot[] deserializerSlots = new DeserializerSlot[256];
+
+    /**
+     * Deserializers for extended type ids, indexed by the id minus {@link #FIRST_EXTENDED_TYPE_ID}.
+     */
+    private final DeserializerSlot[] extendedDeserializerSlots;
 
 
     /**
      * Constructor for a new serialization helper
+     * <p/>
+     * Classes which have a serializer and a deserializer but are missing in <code>classByteMap</code> are added to it with the next free type bytes.
      *
      * @param serializers   a map from classes to functions used to serialize objects of the given class type
      * @param deserializers a map from classes to functions used to deserialize objects of the given class type
      * @param classByteMap  a map specifying which object type is matched to which byte during serialization
      * @throws IllegalArgumentException if <code>serializers</code>, <code>deserializers</code> and <code>classByteMap</code> did not have equal size or if a deserializer or serializer cannot be found for a class in the <code>classByteMap</code>
+     * @see #buildHelperWithClassIdMap(java.util.Map, java.util.Map, com.google.common.collect.BiMap) for more than {@link #MAX_NUMBER_OF_SERIALIZERS} classes
      */
     public MultiClassSerializationHelper(final Map<Class<? extends T>, Function<? extends T, byte[]>> serializers,
                                          Map<Class<? extends T>, Function<byte[], ? extends T>> deserializers, final BiMap<Class<? extends T>, Byte> classByteMap) throws IllegalArgumentException {
+        this(serializers, deserializers, toClassIdMap(classByteMap), classByteMap);
+    }
 
+    private MultiClassSerializationHelper(final Map<Class<? extends T>, Function<? extends T, byte[]>> serializers,
+                                          Map<Class<? extends T>, Function<byte[], ? extends T>> deserializers, final BiMap<Class<? extends T>, Integer> classIdMap,
+                                          final BiMap<Class<? extends T>, Byte> classByteMap) throws IllegalArgumentException {
 
-        if (classByteMap.size() > serializers.size() || classByteMap.size() > deserializers.size()) {
+
+        if (classIdMap.size() > serializers.size() || classIdMap.size() > deserializers.size()) {
             throw new IllegalArgumentException("There are fewer entries in the serializer or deserializer maps than in the classToByteMap. Please add a serializer and deserializer for each class listed in the mapping file.");
         }
 
-        this.serializers = new HashMap<Class<? extends T>, Function<? extends T, byte[]>>(serializers.size());
-        this.deserializers = new HashMap<Byte, Function<byte[], ? extends T>>(deserializers.size());
+        Map<Class<? extends T>, Function<? extends T, byte[]>> typeSerializers = new HashMap<Class<? extends T>, Function<? extends T, byte[]>>(serializers.size());
+        Map<Integer, Function<byte[], ? extends T>> idDeserializers = new HashMap<Integer, Function<byte[], ? extends T>>(deserializers.size());
+        this.ids = classIdMap;
         this.mapping = classByteMap;
+        this.classIdMapping = null;
 
-        byte maxByte = Byte.MIN_VALUE;
+        int maxId = Byte.MIN_VALUE;
 
-        for (Map.Entry<Class<? extends T>, Byte> pairs : mapping.entrySet()) {
-            if (pairs.getValue() > maxByte) {
-                maxByte = pairs.getValue();
+        for (Map.Entry<Class<? extends T>, Integer> pairs : ids.entrySet()) {
+            if (pairs.getValue() < Byte.MIN_VALUE || pairs.getValue() > MAX_TYPE_ID) {
+                throw new IllegalArgumentException("Type id " + pairs.getValue() + " of class " + pairs.getKey().getName() + " is out of range");
+            }
+            if (pairs.getValue() > maxId) {
+                maxId = pairs.getValue();
             }
             // Adding serializer
             Function<? extends T, byte[]> serializer = serializers.remove(pairs.getKey());
             if (serializer == null) {
                 throw new IllegalArgumentException("No serializer found for class " + pairs.getKey().getName());
             }
-            this.serializers.put(pairs.getKey(), serializer);
+            typeSerializers.put(pairs.getKey(), serializer);
 
             // Adding deserializer
             Function<byte[], ? extends T> deserializer = deserializers.remove(pairs.getKey());
             if (deserializer == null) {
                 throw new IllegalArgumentException("No deserializer found for class " + pairs.getKey().getName());
             }
-            this.deserializers.put(pairs.getValue(), deserializer);
+            idDeserializers.put(pairs.getValue(), deserializer);
         }
 
         if (serializers.size() > 0 && deserializers.size() > 0 && serializers.size() == deserializers.size()) {
+            // id Byte.MAX_VALUE is left free as marker of extended ids if the assigned ids go beyond the byte range
+            final boolean skipMarker = classByteMap == null && maxId + serializers.size() > Byte.MAX_VALUE;
             for (Map.Entry<Class<? extends T>, Function<? extends T, byte[]>> serializerEntry : serializers.entrySet()) {
                 Function<byte[], ? extends T> deserializer = deserializers.get(serializerEntry.getKey());
                 if (deserializer != null) {
-                    this.mapping.put(serializerEntry.getKey(), ++maxByte);
-                    this.serializers.put(serializerEntry.getKey(), serializerEntry.getValue());
-                    this.deserializers.put(maxByte, deserializer);
+                    int id = ++maxId;
+                    if (skipMarker && id == Byte.MAX_VALUE) {
+                        id = ++maxId;
+                    }
+                    if (id > (classByteMap != null ? Byte.MAX_VALUE : MAX_TYPE_ID)) {
+                        throw new IllegalArgumentException("No type id left for class " + serializerEntry.getKey().getName());
+                    }
+                    if (classByteMap != null) {
+                        this.mapping.put(serializerEntry.getKey(), (byte) id);
+                    }
+                    this.ids.put(serializerEntry.getKey(), id);
+                    typeSerializers.put(serializerEntry.getKey(), serializerEntry.getValue());
+                    idDeserializers.put(id, deserializer);
                 } else {
                     throw new IllegalArgumentException("No deserializer found for class " + serializerEntry.getKey().getName());
                 }
             }
         }
 
-        if (this.serializers.size() != this.deserializers.size() || this.serializers.size() != this.mapping.size()) {
+        if (typeSerializers.size() != idDeserializers.size() || typeSerializers.size() != this.ids.size()) {
             throw new IllegalArgumentException("serializer mapping, deserializer mapping and byte to class mapping must have the same size! Check classByteMap for duplicate entries!");
         }
 
+        this.extendedTypeIds = maxId > Byte.MAX_VALUE;
+        this.extendedTypeIdMarker = extendedTypeIds ? extendedTypeIdMarker(ids.values()) : 0;
+        this.extendedDeserializerSlots = new DeserializerSlot[extendedTypeIds ? maxId - FIRST_EXTENDED_TYPE_ID + 1 : 0];
+
+        for (Map.Entry<Class<? extends T>, Integer> pairs : ids.entrySet()) {
+            addSlots(pairs.getKey(), typeSerializers.get(pairs.getKey()), idDeserializers.get(pairs.getValue()), pairs.getValue());
+        }
+
+    }
+
+    private MultiClassSerializationHelper(final Map<Class<? extends T>, Function<? extends T, byte[]>> serializers,
+                                          Map<Class<? extends T>, Function<byte[], ? extends T>> deserializers, final ClassIdMapping classIdMapping) throws IllegalArgumentException {
+
+        if (classIdMapping.size() != serializers.size() || classIdMapping.size() != deserializers.size()) {
+            throw new IllegalArgumentException("serializer mapping, deserializer mapping and class id mapping must have the same size!");
+        }
+
+        this.ids = null;
+        this.mapping = null;
+        this.classIdMapping = classIdMapping;
+
+        int maxId = Byte.MIN_VALUE;
+        List<Integer> mappingIds = new ArrayList<Integer>(classIdMapping.size());
+        for (int i = 0; i < classIdMapping.size(); i++) {
+            maxId = Math.max(maxId, classIdMapping.getId(i));
+            mappingIds.add(classIdMapping.getId(i));
+        }
+        this.extendedTypeIds = maxId > Byte.MAX_VALUE;
+        this.extendedTypeIdMarker = extendedTypeIds ? extendedTypeIdMarker(mappingIds) : 0;
+        this.extendedDeserializerSlots = new DeserializerSlot[extendedTypeIds ? maxId - FIRST_EXTENDED_TYPE_ID + 1 : 0];
+
+        for (int i = 0; i < classIdMapping.size(); i++) {
+            Class<?> type = classIdMapping.getType(i);
+            Function<? extends T, byte[]> serializer = serializers.get(type);
+            if (serializer == null) {
+                throw new IllegalArgumentException("No serializer found for class " + type.getName());
+            }
+            Function<byte[], ? extends T> deserializer = deserializers.get(type);
+            if (deserializer == null) {
+                throw new IllegalArgumentException("No deserializer found for class " + type.getName());
+            }
+            addSlots(type, serializer, deserializer, classIdMapping.getId(i));
+        }
+    }
+
+    private void addSlots(Class<?> type, Function<?, byte[]> serializer, Function<byte[], ?> deserializer, int id) throws IllegalArgumentException {
+        if (serializer instanceof VersionedSerializer != deserializer instanceof VersionedDeserializer) {
+            throw new IllegalArgumentException("Either both or none of serializer and deserializer of class " + type.getName() + " must be versioned");
+        }
+        byte[] header = typeHeader(id);
+        if (serializer instanceof VersionedSerializer) {
+            header = Arrays.copyOf(header, header.length + 1);
+            header[header.length - 1] = ((VersionedSerializer) serializer).getVersion();
+        }
+        SerializerSlot slot = new SerializerSlot(type, serializer, header);
+        if (serializerSlots.put(type, slot) != null) {
+            throw new IllegalArgumentException("Duplicate class " + type.getName());
+        }
+
+        DeserializerSlot[] table = deserializerSlots;
+        int index = id & 0xFF;
+        if (id >= FIRST_EXTENDED_TYPE_ID) {
+            table = extendedDeserializerSlots;
+            index = id - FIRST_EXTENDED_TYPE_ID;
+        }
+        if (table[index] != null) {
+            throw new IllegalArgumentException("Duplicate type id " + id);
+        }
+        table[index] = new DeserializerSlot(type, deserializer);
+    }
+
+    /**
+     * Creates a new serialization helper from a pre-resolved mapping in a single pass, without building intermediate maps. This is the fastest way to construct
+     * a helper, e.g. from a binary mapping file loaded by {@link ClassIdMapping#load(java.io.File)}. The serializations are the same as those of a helper built with
+     * the equivalent class-id-mapping.
+     * <p/>
+     * Unlike the other ways of construction, the maps passed are not modified and no ids are assigned, so the mapping must contain exactly the classes of
+     * <code>serializers</code> and <code>deserializers</code>.
+     *
+     * @param serializers    a map from classes to functions used to serialize objects of the given class type
+     * @param deserializers  a map from classes to functions used to deserialize objects of the given class type
+     * @param classIdMapping the mapping specifying which object type is matched to which id during serialization
+     * @param <T>            the parent type of objects serialized by this helper
+     * @return a new instance of this class
+     * @throws IllegalArgumentException if <code>serializers</code>, <code>deserializers</code> and <code>classIdMapping</code> don't contain the same classes or if the
+     *                                  mapping contains duplicate classes or ids
+     * @see #buildHelperWithClassIdMap(java.util.Map, java.util.Map, com.google.common.collect.BiMap)
+     */
+    public static <T> MultiClassSerializationHelper<T> buildHelperWithClassIdMapping(final Map<Class<? extends T>, Function<? extends T, byte[]>> serializers,
+                                                                                     Map<Class<? extends T>, Function<byte[], ? extends T>> deserializers, final ClassIdMapping classIdMapping) throws IllegalArgumentException {
+        return new MultiClassSerializationHelper<T>(serializers, deserializers, classIdMapping);
+    }
+
+    /**
+     * Creates a new serialization helper using a class-id-mapping, which unlike a class-byte-mapping may contain more than {@link #MAX_NUMBER_OF_SERIALIZERS} classes.
+     * <p/>
+     * Ids from <code>Byte.MIN_VALUE</code> to <code>Byte.MAX_VALUE</code> are written as a single type byte, so serializations of these classes are identical to those
+     * of a helper using a class-byte-mapping with the same values, and existing serializations remain readable after adding ids beyond the byte range. Larger ids are
+     * written as a marker type byte followed by a variable length integer. The marker is the largest type byte not assigned to a class, so a mapping with ids beyond the
+     * byte range must leave at least one type byte unassigned, and ids assigned to classes missing in <code>classIdMap</code> skip <code>Byte.MAX_VALUE</code> for this
+     * purpose. As the marker depends on the unassigned type bytes, new classes must be added with ids beyond the byte range once the mapping contains such ids.
+     * <p/>
+     * Classes which have a serializer and a deserializer but are missing in <code>classIdMap</code> are added to it with the next free ids.
+     *
+     * @param serializers   a map from classes to functions used to serialize objects of the given class type
+     * @param deserializers a map from classes to functions used to deserialize objects of the given class type
+     * @param classIdMap    a map specifying which object type is matched to which id during serialization
+     * @param <T>           the parent type of objects serialized by this helper
+     * @return a new instance of this class
+     * @throws IllegalArgumentException if <code>serializers</code>, <code>deserializers</code> and <code>classIdMap</code> did not have equal size, if a deserializer or serializer cannot be found for a class in the <code>classIdMap</code>
+     *                                  if an id is outside of <code>Byte.MIN_VALUE</code> and {@link #MAX_TYPE_ID} or if the mapping contains ids beyond the byte range and
+     *                                  assigns all type bytes
+     * @see #buildClassIdMap(java.util.Map, java.util.Map)
+     * @see #loadOrCreateClassIdMap(java.util.Map, java.util.Map, java.io.File)
+     */
+    public static <T> MultiClassSerializationHelper<T> buildHelperWithClassIdMap(final Map<Class<? extends T>, Function<? extends T, byte[]>> serializers,
+                                                                                 Map<Class<? extends T>, Function<byte[], ? extends T>> deserializers, final BiMap<Class<? extends T>, Integer> classIdMap) throws IllegalArgumentException {
+        return new MultiClassSerializationHelper<T>(serializers, deserializers, classIdMap, null);
     }
 
 
@@ -136,6 +342,43 @@ public class MultiClassSerializationHelper<T> {
 
     }
 
+    /**
+     * This function builds a new class id mapping for the given serializers and deserializers, assigning ids upwards from <code>Byte.MIN_VALUE</code>.
+     * <p/>
+     * For up to {@link #MAX_NUMBER_OF_SERIALIZERS} classes, the ids fit into a type byte, so the mapping can be converted to a class-byte-mapping if needed.
+     * <strong>Warning: </strong> multiple calls to this method may lead to different mappings.
+     *
+     * @param serializers   map from class types to serializer functions able to serialize instances of the class.
+     * @param deserializers map from class types to deserializer functions able to deserialize byte arrays representing instances of the class.
+     * @param <T>           the common parent type
+     * @return a bidirectional mapping between classes and ids
+     * @throws IllegalArgumentException if <code>serializers.size()</code> and <code>deserializer.size()</code> differ or if these maps contain more classes than ids are available
+     * @see #storeClassIdMap(java.io.File, com.google.common.collect.BiMap)
+     * @see #buildHelperWithClassIdMap(java.util.Map, java.util.Map, com.google.common.collect.BiMap)
+     */
+    public static <T> BiMap<Class<? extends T>, Integer> buildClassIdMap(final Map<Class<? extends T>, Function<? extends T, byte[]>> serializers,
+                                                                         Map<Class<? extends T>, Function<byte[], ? extends T>> deserializers) throws IllegalArgumentException {
+
+        if (serializers.size() != deserializers.size()) {
+            throw new IllegalArgumentException("Size of serializers and deserializers must be equal!");
+        }
+        if (serializers.size() > MAX_TYPE_ID - Byte.MIN_VALUE) {
+            throw new IllegalArgumentException("serializers map or deserializers map is too big! Max size is " + (MAX_TYPE_ID - Byte.MIN_VALUE));
+        }
+
+        BiMap<Class<? extends T>, Integer> mapping = HashBiMap.create(serializers.size());
+        // id Byte.MAX_VALUE is left free as marker of extended ids if the ids go beyond the byte range
+        final boolean skipMarker = serializers.size() > MAX_NUMBER_OF_SERIALIZERS + 1;
+        int id = Byte.MIN_VALUE;
+        for (Class<? extends T> clazz : serializers.keySet()) {
+            if (skipMarker && id == Byte.MAX_VALUE) {
+                id++;
+            }
+            mapping.put(clazz, id++);
+        }
+        return mapping;
+    }
+
     /**
      * This methods loads the mapping from a file if it exists or creates a builds a new map and stores it at the file location otherwise.
      *
@@ -166,6 +409,34 @@ public class MultiClassSerializationHelper<T> {
 
     }
 
+    /**
+     * This methods loads the class-id-mapping from a file if it exists or builds a new map and stores it at the file location otherwise.
+     * Existing mapping files written by {@link #storeClassByteMap(java.io.File, com.google.common.collect.BiMap)} are loaded as well.
+     *
+     * @param serializers   map from class types to serializer functions able to serialize instances of the class.
+     * @param deserializers map from class types to deserializer functions able to deserialize byte arrays representing instances of the class.
+     * @param mappingFile   the file used for mapping persistence
+     * @param <T>           the parent type
+     * @return the loaded mapping if existing, a newly created mapping otherwise
+     * @throws IllegalArgumentException         if the file points to a directory
+     * @throws IOException                      if another error occurs while reading or writing the mapping file
+     * @throws java.lang.ClassNotFoundException if a class in the mapping file was not found
+     * @see #buildClassIdMap(java.util.Map, java.util.Map)
+     */
+    public static <T> BiMap<Class<? extends T>, Integer> loadOrCreateClassIdMap(final Map<Class<? extends T>, Function<? extends T, byte[]>> serializers,
+                                                                                Map<Class<? extends T>, Function<byte[], ? extends T>> deserializers, File mappingFile) throws IllegalArgumentException, IOException, ClassNotFoundException {
+        BiMap<Class<? extends T>, Integer> mapping;
+        try {
+            mapping = loadClassIdMap(mappingFile);
+        } catch (FileNotFoundException e) {
+            //no serializer mapping exists yet
+            mapping = buildClassIdMap(serializers, deserializers);
+            storeClassIdMap(mappingFile, mapping);
+        }
+
+        return mapping;
+    }
+
     /**
      * This method creates an new MultiClassSerializationHelper after loading the class-byte-mapping from the specified file.
      *
@@ -197,18 +468,46 @@ public class MultiClassSerializationHelper<T> {
      * @throws java.io.FileNotFoundException if the mapping file cannot be found
      * @throws IOException                   if an error occurs while reading the mapping file
      * @throws ClassNotFoundException        if the mapping file specifies one or many non existing class(es)
-     * @throws IllegalArgumentException      if the file points to a directory
+     * @throws IllegalArgumentException      if the file points to a directory or contains ids which don't fit into a type byte
      * @see de.uniluebeck.itm.util.serialization.MultiClassSerializationHelper#storeClassByteMap(java.io.File, com.google.common.collect.BiMap)
+     * @see #loadClassIdMap(java.io.File)
      */
 
     public static <T> BiMap<Class<? extends T>, Byte> loadClassByteMap(File mappingFile) throws IOException, ClassNotFoundException, IllegalArgumentException {
+        BiMap<Class<? extends T>, Integer> ids = loadClassIdMap(mappingFile);
+        BiMap<Class<? extends T>, Byte> mapping = HashBiMap.create(ids.size());
+        for (Map.Entry<Class<? extends T>, Integer> entry : ids.entrySet()) {
+            if (entry.getValue() < Byte.MIN_VALUE || entry.getValue() > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Type id " + entry.getValue() + " of class " + entry.getKey().getName() + " doesn't fit into a byte. Load the mapping with loadClassIdMap instead.");
+            }
+            mapping.put(entry.getKey(), entry.getValue().byteValue());
+        }
+        return mapping;
+    }
+
+    /**
+     * Loading the class-id-mapping from the provided file
+     * <p/>
+     * The file format is the one of class-byte-mapping files, i.e. one comma separated pair of class name and type id per line (e.g. "java.lang.String,300"),
+     * so files written by {@link #storeClassByteMap(java.io.File, com.google.common.collect.BiMap)} can be loaded, too.
+     *
+     * @param mappingFile the file containing the mapping
+     * @param <T>         the parent type
+     * @return the loaded class-id-mapping
+     * @throws java.io.FileNotFoundException if the mapping file cannot be found
+     * @throws IOException                   if an error occurs while reading the mapping file
+     * @throws ClassNotFoundException        if the mapping file specifies one or many non existing class(es)
+     * @throws IllegalArgumentException      if the file points to a directory
+     * @see #storeClassIdMap(java.io.File, com.google.common.collect.BiMap)
+     */
+    public static <T> BiMap<Class<? extends T>, Integer> loadClassIdMap(File mappingFile) throws IOException, ClassNotFoundException, IllegalArgumentException {
         if (!mappingFile.exists()) {
             throw new FileNotFoundException("Can't load mapping from non existing file (" + mappingFile.getAbsolutePath() + ")");
         }
         if (mappingFile.isDirectory()) {
             throw new IllegalArgumentException("Mapping file must be a file and not a directory (" + mappingFile.getAbsolutePath() + ")");
         }
-        BiMap<Class<? extends T>, Byte> mapping = HashBiMap.create();
+        BiMap<Class<? extends T>, Integer> mapping = HashBiMap.create();
 
         // Build mapping for existing types
         List<String> notFoundClasses = new ArrayList<String>();
@@ -225,7 +524,7 @@ public class MultiClassSerializationHelper<T> {
                 String className = components[0].trim();
                 try {
                     @SuppressWarnings("unchecked") Class<? extends T> clazz = (Class<T>) Class.forName(className);
-                    mapping.put(clazz, Byte.parseByte(components[1]));
+                    mapping.put(clazz, Integer.parseInt(components[1].trim()));
                 } catch (ClassNotFoundException e) {
                     notFoundClasses.add(className);
                 }
@@ -258,6 +557,24 @@ public class MultiClassSerializationHelper<T> {
      * @throws IllegalArgumentException if the mapping file is a directory
      */
     public static <T> void storeClassByteMap(File mappingFile, BiMap<Class<? extends T>, Byte> mapping) throws IOException, IllegalArgumentException {
+        storeMapping(mappingFile, mapping);
+    }
+
+    /**
+     * Writes the provided class-id-mapping to the provided file
+     *
+     * @param mappingFile the mapping file
+     * @param mapping     the class-id-map
+     * @param <T>         the common parent type of all classes in the mapping
+     * @throws IOException              if an error occurs while writing the mapping to the file
+     * @throws IllegalArgumentException if the mapping file is a directory
+     * @see #loadClassIdMap(java.io.File)
+     */
+    public static <T> void storeClassIdMap(File mappingFile, BiMap<Class<? extends T>, Integer> mapping) throws IOException, IllegalArgumentException {
+        storeMapping(mappingFile, mapping);
+    }
+
+    private static void storeMapping(File mappingFile, Map<? extends Class<?>, ? extends Number> mapping) throws IOException, IllegalArgumentException {
         if (!mappingFile.exists() && !mappingFile.isDirectory()) {
             Files.createParentDirs(mappingFile);
             mappingFile.createNewFile();
@@ -268,9 +585,9 @@ public class MultiClassSerializationHelper<T> {
         }
 
         BufferedWriter bw = new BufferedWriter(new FileWriter(mappingFile));
-        Iterator<Map.Entry<Class<? extends T>, Byte>> it = mapping.entrySet().iterator();
+        Iterator<? extends Map.Entry<? extends Class<?>, ? extends Number>> it = mapping.entrySet().iterator();
         while (it.hasNext()) {
-            Map.Entry<Class<? extends T>, Byte> entry = it.next();
+            Map.Entry<? extends Class<?>, ? extends Number> entry = it.next();
             bw.write(entry.getKey().getName() + "," + entry.getValue());
             if (it.hasNext()) {
                 bw.write("\n");
@@ -283,8 +600,50 @@ public class MultiClassSerializationHelper<T> {
         }
     }
 
+    /**
+     * Sets the sink receiving the number of bytes and the time of each serialization and deserialization, e.g. a {@link SerializationStatistics}.
+     * While no sink is set, which is the default, no measurements are taken.
+     *
+     * @param metrics the sink or <code>null</code> to disable metrics
+     */
+    public void setMetrics(SerializationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics sink.
+     *
+     * @return the sink or <code>null</code> if metrics are disabled
+     */
+    public SerializationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the class-byte-mapping used by this helper.
+     *
+     * @return an unmodifiable view of the mapping, as the dispatch tables are built from it at construction time
+     * @throws IllegalStateException if this helper was built with a class-id-mapping
+     * @see #getClassIdMapping()
+     */
     public BiMap<Class<? extends T>, Byte> getClassByteMapping() {
-        return mapping;
+        if (mapping == null) {
+            throw new IllegalStateException("This helper uses a class-id-mapping");
+        }
+        return Maps.unmodifiableBiMap(mapping);
+    }
+
+    /**
+     * Returns the class-id-mapping used by this helper. For helpers built with a class-byte-mapping, it contains the same ids as the class-byte-mapping.
+     *
+     * @return an unmodifiable view of the mapping
+     */
+    @SuppressWarnings("unchecked")
+    public BiMap<Class<? extends T>, Integer> getClassIdMapping() {
+        if (ids == null) {
+            return Maps.unmodifiableBiMap((BiMap) classIdMapping.toClassIdMap());
+        }
+        return Maps.unmodifiableBiMap(ids);
     }
 
     /**
@@ -314,30 +673,118 @@ public class MultiClassSerializationHelper<T> {
     public byte[] serialize(T object, final Class<? extends T> type) throws NotSerializableException {
         try {
 
-            if (!serializers.containsKey(type)) {
-                throw new NotSerializableException("Can't find a serializer for type " + type.getName());
-            }
+            final SerializationMetrics metrics = this.metrics;
+            final long start = metrics != null ? System.nanoTime() : 0;
 
-            Function serializer = serializers.get(type);
-            @SuppressWarnings("unchecked") byte[] serialized = (byte[]) serializer.apply(object);
+            SerializerSlot slot = getSerializer(type);
+            byte[] serialized = apply(slot.function, object);
 
-            if (serialized == null) {
-                throw new RuntimeException("Serialization result for object " + object.toString() + " is null");
+            byte[] finalSerialization = new byte[slot.typeHeader.length + serialized.length];
+            System.arraycopy(slot.typeHeader, 0, finalSerialization, 0, slot.typeHeader.length);
+            System.arraycopy(serialized, 0, finalSerialization, slot.typeHeader.length, serialized.length);
+
+            if (metrics != null) {
+                metrics.serialized(slot.type, finalSerialization.length, System.nanoTime() - start);
             }
+            return finalSerialization;
 
-            byte typeByte = mapping.get(type);
-            byte[] finalSerialization = new byte[serialized.length + 1];
-            finalSerialization[0] = typeByte;
-            System.arraycopy(serialized, 0, finalSerialization, 1, serialized.length);
+        } catch (ClassCastException e) {
+            throw new NotSerializableException("Failed to apply serializer function to " + object);
+        }
+    }
 
-            return finalSerialization;
+    /**
+     * Method for serializing an object into a buffer.
+     * <p/>
+     * This method uses the objects getClass-method to get the serializer type
+     *
+     * @param object the object to serialize
+     * @param target the buffer to write to, starting at its current position
+     * @return the number of bytes written
+     * @throws NotSerializableException if something went wrong during serialization
+     * @see #serialize(Object, Class, java.nio.ByteBuffer)
+     */
+    public int serialize(T object, ByteBuffer target) throws NotSerializableException {
+        @java.lang.SuppressWarnings("unchecked") Class<T> c = (Class<T>) object.getClass();
+        return serialize(object, c, target);
+    }
+
+    /**
+     * Method for serializing an object into a buffer using a specific serializer type.
+     * <p/>
+     * The type byte and the serialization of the object are written to <code>target</code> starting at its current position, which is advanced by the number of bytes written.
+     * The written bytes are identical to the array returned by {@link #serialize(Object, Class)}. If the serializer implements {@link ByteBufferSerializer} it writes
+     * directly into <code>target</code>, otherwise the array returned by the serializer function is copied into it.
+     *
+     * @param object the object to serialize
+     * @param type   the serializer type to use
+     * @param target the buffer to write to
+     * @return the number of bytes written
+     * @throws NotSerializableException         if the serializer for the given <code>type</code> isn't able to serialize the object or if the serializer returns <code>null</code>.
+     * @throws java.nio.BufferOverflowException if <code>target</code> has not enough space remaining, in which case its position is left unchanged
+     */
+    public int serialize(T object, final Class<? extends T> type, ByteBuffer target) throws NotSerializableException {
+        final int start = target.position();
+        try {
+            final SerializationMetrics metrics = this.metrics;
+            final long startNanos = metrics != null ? System.nanoTime() : 0;
+
+            SerializerSlot slot = getSerializer(type);
+            writeTypeHeader(target, slot);
+
+            if (slot.bufferSerializer != null) {
+                slot.bufferSerializer.serialize(object, target);
+            } else {
+                target.put(apply(slot.function, object));
+            }
+
+            if (metrics != null) {
+                metrics.serialized(slot.type, target.position() - start, System.nanoTime() - startNanos);
+            }
+            return target.position() - start;
 
         } catch (ClassCastException e) {
+            target.position(start);
             throw new NotSerializableException("Failed to apply serializer function to " + object);
+        } catch (RuntimeException e) {
+            target.position(start);
+            throw e;
         }
     }
 
 
+    /**
+     * Method for serializing an object into a buffer taken from <code>pool</code>.
+     * <p/>
+     * The buffer grows until the serialization fits. If the serializer implements {@link ByteBufferSerializer}, serializing this way allocates nothing
+     * once the pool's buffers have grown to the size of the serializations, otherwise only the array returned by the serializer function is allocated.
+     *
+     * @param object the object to serialize
+     * @param pool   the pool to take the buffer from
+     * @return the pooled buffer, containing the serialization between its position and limit, to be closed after use
+     * @throws NotSerializableException if something went wrong during serialization, in which case the buffer has already been returned to the pool
+     */
+    public PooledBuffer serialize(T object, SerializationBufferPool pool) throws NotSerializableException {
+        PooledBuffer pooled = pool.acquire();
+        boolean serialized = false;
+        try {
+            while (!serialized) {
+                try {
+                    serialize(object, pooled.getBuffer());
+                    serialized = true;
+                } catch (BufferOverflowException e) {
+                    pool.grow(pooled);
+                }
+            }
+            pooled.getBuffer().flip();
+            return pooled;
+        } finally {
+            if (!serialized) {
+                pooled.close();
+            }
+        }
+    }
+
     /**
      * Method for deserializing a byte array conforming to the serialization format used by this class (type byte|object serialization)
      *
@@ -349,15 +796,536 @@ public class MultiClassSerializationHelper<T> {
         if (serialization == null || serialization.length == 0) {
             throw new IllegalArgumentException("Can't deserialize empty byte array");
         }
+        if (extendedTypeIds && serialization[0] == extendedTypeIdMarker) {
+            return deserialize(ByteBuffer.wrap(serialization));
+        }
+
+        final SerializationMetrics metrics = this.metrics;
+        final long start = metrics != null ? System.nanoTime() : 0;
+
+        DeserializerSlot slot = getDeserializer(serialization[0]);
+        final T object = deserialize(slot, ByteBuffer.wrap(serialization, 1, serialization.length - 1));
+
+        if (metrics != null) {
+            metrics.deserialized(slot.type, serialization.length, System.nanoTime() - start);
+        }
+        return object;
+    }
+
+    /**
+     * Method for deserializing an object from a buffer conforming to the serialization format used by this class (type byte|object serialization).
+     * <p/>
+     * The serialization spans from the current position to the limit of <code>source</code>. After returning, the position of <code>source</code> equals its limit.
+     * If the deserializer implements {@link ByteBufferDeserializer} it reads directly from <code>source</code>, otherwise the serialization is copied into an array first.
+     *
+     * @param source the buffer containing the serialization
+     * @return the deserialized version
+     * @throws IllegalArgumentException if no deserializer was found for the type byte or if the buffer has no remaining bytes
+     */
+    public T deserialize(ByteBuffer source) throws IllegalArgumentException {
+        final SerializationMetrics metrics = this.metrics;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        final int length = source.remaining();
+
+        DeserializerSlot slot = readTypeHeader(source);
+        final T object;
+        try {
+            object = deserialize(slot, source);
+        } finally {
+            source.position(source.limit());
+        }
+
+        if (metrics != null) {
+            metrics.deserialized(slot.type, length, System.nanoTime() - start);
+        }
+        return object;
+    }
+
+    /**
+     * Method for accessing a serialization without decoding it completely.
+     * <p/>
+     * If the deserializer of the serialization's type implements {@link ViewDeserializer}, it creates a view on the object serialization, which spans from behind
+     * the type header (and version) to the limit of <code>source</code>. The view reads a slice of <code>source</code>, which must therefore not be modified while
+     * the view is in use. Otherwise, the serialization is deserialized completely, i.e. the object serves as its own view.
+     * After returning, the position of <code>source</code> equals its limit.
+     *
+     * @param source the buffer containing the serialization
+     * @return the view or the deserialized object
+     * @throws IllegalArgumentException if no deserializer was found for the type header or if the buffer has no remaining bytes
+     * @see #getType(java.nio.ByteBuffer)
+     */
+    public Object view(ByteBuffer source) throws IllegalArgumentException {
+        DeserializerSlot slot = readTypeHeader(source);
+        try {
+            if (slot.viewDeserializer == null) {
+                return deserialize(slot, source);
+            }
+            final byte version = slot.versionedDeserializer != null ? readVersion(source) : 0;
+            return slot.viewDeserializer.view(source.slice(), version);
+        } finally {
+            source.position(source.limit());
+        }
+    }
+
+    /**
+     * Method for accessing a serialization without decoding it completely, see {@link #view(java.nio.ByteBuffer)}.
+     *
+     * @param serialization the serialization
+     * @return the view or the deserialized object
+     * @throws IllegalArgumentException if no deserializer was found for the type header or if the serialization is an empty array
+     */
+    public Object view(byte[] serialization) throws IllegalArgumentException {
+        return view(ByteBuffer.wrap(serialization));
+    }
+
+    /**
+     * Returns the type of the serialization starting at the current position of <code>source</code>, without decoding it or changing the position of <code>source</code>.
+     *
+     * @param source the buffer containing the serialization
+     * @return the type
+     * @throws IllegalArgumentException if no deserializer was found for the type header or if the buffer has no remaining bytes
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends T> getType(ByteBuffer source) throws IllegalArgumentException {
+        final int position = source.position();
+        try {
+            return (Class<? extends T>) readTypeHeader(source).type;
+        } finally {
+            source.position(position);
+        }
+    }
+
+    /**
+     * Serializes <code>objects</code> into a single framed buffer.
+     * <p/>
+     * The buffer contains the number of objects as a {@link VarInts variable length integer}, followed by one record per object in iteration order.
+     * Each record consists of the length of the serialization as a variable length integer and the serialization itself (type byte|object serialization),
+     * i.e. records are framed like the records of a {@link MultiClassSerializationWriter} stream.
+     *
+     * @param objects the objects to serialize
+     * @return a buffer containing the framed records between its position (zero) and limit
+     * @throws NotSerializableException if one of the objects can't be serialized
+     * @see #deserializeBatch(java.nio.ByteBuffer)
+     */
+    public ByteBuffer serializeBatch(Collection<? extends T> objects) throws NotSerializableException {
+        List<? extends T> list = new ArrayList<T>(objects);
+        ByteBuffer records = writeRecords(list, 0, list.size());
+        ByteBuffer framed = ByteBuffer.allocate(VarInts.sizeOf(list.size()) + records.remaining());
+        VarInts.write(framed, list.size());
+        framed.put(records);
+        framed.flip();
+        return framed;
+    }
+
+    /**
+     * Like {@link #serializeBatch(java.util.Collection)} but serializes large batches in parallel on <code>executor</code>, using up to <code>parallelism</code> tasks.
+     * Each task serializes a contiguous range of the objects, and the results are concatenated in order.
+     *
+     * @param objects     the objects to serialize
+     * @param executor    the executor to run the tasks on
+     * @param parallelism the maximum number of tasks
+     * @return a buffer containing the framed records between its position (zero) and limit
+     * @throws NotSerializableException if one of the objects can't be serialized
+     * @throws InterruptedException     if interrupted while waiting for the tasks
+     */
+    public ByteBuffer serializeBatch(Collection<? extends T> objects, ExecutorService executor, int parallelism) throws NotSerializableException, InterruptedException {
+        final List<? extends T> list = new ArrayList<T>(objects);
+        final int[] bounds = split(list.size(), parallelism);
+
+        List<Callable<ByteBuffer>> tasks = new ArrayList<Callable<ByteBuffer>>(bounds.length - 1);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            tasks.add(new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() throws NotSerializableException {
+                    return writeRecords(list, from, to);
+                }
+            });
+        }
+
+        List<ByteBuffer> parts = new ArrayList<ByteBuffer>(tasks.size());
+        int size = VarInts.sizeOf(list.size());
+        for (Future<ByteBuffer> future : executor.invokeAll(tasks)) {
+            ByteBuffer part = get(future);
+            size += part.remaining();
+            parts.add(part);
+        }
+
+        ByteBuffer framed = ByteBuffer.allocate(size);
+        VarInts.write(framed, list.size());
+        for (ByteBuffer part : parts) {
+            framed.put(part);
+        }
+        framed.flip();
+        return framed;
+    }
+
+    /**
+     * Deserializes a buffer written by {@link #serializeBatch(java.util.Collection)}, from its current position. After returning, the position of <code>framed</code> is behind the last record.
+     *
+     * @param framed the framed records
+     * @return the deserialized objects in their original order
+     * @throws IllegalArgumentException if the buffer is malformed or a record can't be deserialized
+     */
+    public List<T> deserializeBatch(ByteBuffer framed) throws IllegalArgumentException {
+        int[] offsets = scanRecords(framed);
+        List<T> objects = new ArrayList<T>(offsets.length / 2);
+        readRecords(framed, offsets, 0, offsets.length / 2, objects);
+        return objects;
+    }
+
+    /**
+     * Like {@link #deserializeBatch(java.nio.ByteBuffer)} but deserializes large batches in parallel on <code>executor</code>, using up to <code>parallelism</code> tasks.
+     * The record boundaries are determined in a first sequential pass that only reads the record lengths.
+     *
+     * @param framed      the framed records
+     * @param executor    the executor to run the tasks on
+     * @param parallelism the maximum number of tasks
+     * @return the deserialized objects in their original order
+     * @throws IllegalArgumentException if the buffer is malformed or a record can't be deserialized
+     * @throws InterruptedException     if interrupted while waiting for the tasks
+     */
+    public List<T> deserializeBatch(final ByteBuffer framed, ExecutorService executor, int parallelism) throws IllegalArgumentException, InterruptedException {
+        final int[] offsets = scanRecords(framed);
+        final int[] bounds = split(offsets.length / 2, parallelism);
+
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(bounds.length - 1);
+        for (int i = 0; i < bounds.length - 1; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            tasks.add(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    List<T> objects = new ArrayList<T>(to - from);
+                    readRecords(framed.duplicate(), offsets, from, to, objects);
+                    return objects;
+                }
+            });
+        }
+
+        List<T> objects = new ArrayList<T>(offsets.length / 2);
+        for (Future<List<T>> future : executor.invokeAll(tasks)) {
+            try {
+                objects.addAll(get(future));
+            } catch (NotSerializableException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Writes a record (length|type byte|object serialization) for <code>object</code> at the current position of <code>target</code>, which must be backed by an accessible array.
+     * <p/>
+     * The serialization is written behind space reserved for its length, which is sized by <code>lengthHint</code>. The last bytes of the buffer are kept free while serializing
+     * so that the serialization can always be moved if its length needs more space than reserved. Using the length of the previous record as hint avoids moving for streams
+     * of similarly sized records.
+     *
+     * @param object     the object to write
+     * @param target     the buffer to write to
+     * @param lengthHint the expected length of the serialization
+     * @return the length of the serialization or -1 if <code>target</code> has not enough space remaining, in which case its position is unchanged
+     * @throws NotSerializableException if the object can't be serialized
+     */
+    int writeRecord(T object, ByteBuffer target, int lengthHint) throws NotSerializableException {
+        final int start = target.position();
+        final int reserved = VarInts.sizeOf(lengthHint);
+        final int limit = target.limit();
+        if (limit - start < VarInts.MAX_SIZE + reserved) {
+            return -1;
+        }
 
-        Function<byte[], ? extends T> deserializer = deserializers.get(serialization[0]);
-        if (deserializer == null) {
+        int length = -1;
+        target.limit(limit - (VarInts.MAX_SIZE - 1));
+        target.position(start + reserved);
+        try {
+            length = serialize(object, target);
+        } catch (BufferOverflowException e) {
+            return -1;
+        } finally {
+            target.limit(limit);
+            if (length < 0) {
+                target.position(start);
+            }
+        }
+
+        final int actual = VarInts.sizeOf(length);
+        if (actual != reserved) {
+            final byte[] array = target.array();
+            System.arraycopy(array, target.arrayOffset() + start + reserved, array, target.arrayOffset() + start + actual, length);
+        }
+        target.position(start);
+        VarInts.write(target, length);
+        target.position(start + actual + length);
+        return length;
+    }
+
+    /**
+     * Writes records for the objects from index <code>from</code> (inclusive) to <code>to</code> (exclusive) into a new buffer.
+     */
+    private ByteBuffer writeRecords(List<? extends T> objects, int from, int to) throws NotSerializableException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(64, (to - from) * 32));
+        int lengthHint = 0;
+        for (int i = from; i < to; i++) {
+            T object = objects.get(i);
+            int length = writeRecord(object, buffer, lengthHint);
+            if (length < 0) {
+                // serialize into an array once instead of retrying with growing buffers
+                byte[] serialization = serialize(object);
+                buffer = ensureRemaining(buffer, 2 * (VarInts.MAX_SIZE + serialization.length));
+                VarInts.write(buffer, serialization.length);
+                buffer.put(serialization);
+                length = serialization.length;
+            }
+            lengthHint = length;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the record count of a framed buffer and determines the offsets of the records' serializations. The serialization of record <code>i</code> spans
+     * from <code>offsets[2 * i]</code> (inclusive) to <code>offsets[2 * i + 1]</code> (exclusive). Advances the position of <code>framed</code> behind the last record.
+     */
+    private static int[] scanRecords(ByteBuffer framed) throws IllegalArgumentException {
+        try {
+            int count = VarInts.read(framed);
+            if (count < 0 || count > framed.remaining()) {
+                throw new IllegalArgumentException("Invalid record count " + (count & 0xFFFFFFFFL));
+            }
+            int[] offsets = new int[2 * count];
+            for (int i = 0; i < count; i++) {
+                int length = VarInts.read(framed);
+                if (length < 0 || length > framed.remaining()) {
+                    throw new IllegalArgumentException("Record " + i + " exceeds the buffer");
+                }
+                offsets[2 * i] = framed.position();
+                offsets[2 * i + 1] = framed.position() + length;
+                framed.position(offsets[2 * i + 1]);
+            }
+            return offsets;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Framed buffer is truncated");
+        }
+    }
+
+    private void readRecords(ByteBuffer framed, int[] offsets, int from, int to, List<T> objects) {
+        final int limit = framed.limit();
+        final int position = framed.position();
+        try {
+            for (int i = from; i < to; i++) {
+                framed.limit(offsets[2 * i + 1]);
+                framed.position(offsets[2 * i]);
+                objects.add(deserialize(framed));
+            }
+        } finally {
+            framed.limit(limit);
+            framed.position(position);
+        }
+    }
+
+    /**
+     * Splits <code>count</code> objects into at most <code>parallelism</code> contiguous ranges of at least {@link #MIN_OBJECTS_PER_TASK} objects.
+     *
+     * @return the bounds of the ranges, range <code>i</code> spanning from <code>bounds[i]</code> to <code>bounds[i + 1]</code>
+     */
+    private static int[] split(int count, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        int tasks = Math.max(1, Math.min(parallelism, count / MIN_OBJECTS_PER_TASK));
+        int[] bounds = new int[tasks + 1];
+        for (int i = 0; i <= tasks; i++) {
+            bounds[i] = (int) ((long) count * i / tasks);
+        }
+        return bounds;
+    }
+
+    private static <V> V get(Future<V> future) throws NotSerializableException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // invokeAll only returns completed futures
+            throw new AssertionError(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof NotSerializableException) {
+                throw (NotSerializableException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int remaining) {
+        if (buffer.remaining() >= remaining) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.position() + remaining, 2 * buffer.capacity()));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T deserialize(DeserializerSlot slot, ByteBuffer source) {
+        if (slot.versionedDeserializer != null) {
+            return (T) slot.versionedDeserializer.deserialize(source, readVersion(source));
+        }
+        if (slot.bufferDeserializer != null) {
+            return (T) slot.bufferDeserializer.deserialize(source);
+        }
+        byte[] event = new byte[source.remaining()];
+        source.get(event);
+        return (T) slot.function.apply(event);
+    }
+
+    private SerializerSlot getSerializer(Class<? extends T> type) throws NotSerializableException {
+        SerializerSlot slot = serializerSlots.get(type);
+        if (slot == null) {
+            throw new NotSerializableException("Can't find a serializer for type " + type.getName());
+        }
+        return slot;
+    }
+
+    private DeserializerSlot getDeserializer(byte typeByte) throws IllegalArgumentException {
+        DeserializerSlot slot = deserializerSlots[typeByte & 0xFF];
+        if (slot == null) {
+            throw new IllegalArgumentException("The provided byte array is invalid. No matching serializer found!");
+        }
+        return slot;
+    }
+
+    private DeserializerSlot getExtendedDeserializer(int index) throws IllegalArgumentException {
+        DeserializerSlot slot = index >= 0 && index < extendedDeserializerSlots.length ? extendedDeserializerSlots[index] : null;
+        if (slot == null) {
             throw new IllegalArgumentException("The provided byte array is invalid. No matching serializer found!");
         }
-        byte[] event = new byte[serialization.length - 1];
-        System.arraycopy(serialization, 1, event, 0, serialization.length - 1);
+        return slot;
+    }
+
+    private static byte[] apply(Function<Object, byte[]> serializer, Object object) {
+        byte[] serialized = serializer.apply(object);
+        if (serialized == null) {
+            throw new RuntimeException("Serialization result for object " + object.toString() + " is null");
+        }
+        return serialized;
+    }
+
+    private static <T> BiMap<Class<? extends T>, Integer> toClassIdMap(BiMap<Class<? extends T>, Byte> classByteMap) {
+        BiMap<Class<? extends T>, Integer> ids = HashBiMap.create(classByteMap.size());
+        for (Map.Entry<Class<? extends T>, Byte> entry : classByteMap.entrySet()) {
+            ids.put(entry.getKey(), entry.getValue().intValue());
+        }
+        return ids;
+    }
 
+    /**
+     * Returns the largest type byte which is not assigned to a class, to be used as marker of extended ids.
+     *
+     * @throws IllegalArgumentException if all type bytes are assigned
+     */
+    private static byte extendedTypeIdMarker(Collection<Integer> ids) throws IllegalArgumentException {
+        boolean[] assigned = new boolean[256];
+        for (int id : ids) {
+            if (id < FIRST_EXTENDED_TYPE_ID) {
+                assigned[id - Byte.MIN_VALUE] = true;
+            }
+        }
+        for (int id = Byte.MAX_VALUE; id >= Byte.MIN_VALUE; id--) {
+            if (!assigned[id - Byte.MIN_VALUE]) {
+                return (byte) id;
+            }
+        }
+        throw new IllegalArgumentException("All type bytes are assigned, so no type byte is left to mark ids beyond " + Byte.MAX_VALUE + ". Move a class without "
+                + "existing serializations to an id beyond " + Byte.MAX_VALUE + ", its type byte then serves as marker.");
+    }
 
-        return deserializer.apply(event);
+    private byte[] typeHeader(int id) {
+        if (id < FIRST_EXTENDED_TYPE_ID) {
+            return new byte[]{(byte) id};
+        }
+        byte[] header = new byte[1 + VarInts.sizeOf(id - FIRST_EXTENDED_TYPE_ID)];
+        header[0] = extendedTypeIdMarker;
+        VarInts.write(header, 1, id - FIRST_EXTENDED_TYPE_ID);
+        return header;
+    }
+
+    private static void writeTypeHeader(ByteBuffer target, SerializerSlot slot) {
+        if (slot.typeHeader.length == 1) {
+            target.put(slot.typeHeader[0]);
+        } else {
+            target.put(slot.typeHeader);
+        }
+    }
+
+    private static byte readVersion(ByteBuffer source) throws IllegalArgumentException {
+        try {
+            return source.get();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Serialization ends within the type header");
+        }
+    }
+
+    private DeserializerSlot readTypeHeader(ByteBuffer source) throws IllegalArgumentException {
+        final byte typeByte;
+        try {
+            typeByte = source.get();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Can't deserialize empty buffer");
+        }
+        if (extendedTypeIds && typeByte == extendedTypeIdMarker) {
+            try {
+                return getExtendedDeserializer(VarInts.read(source));
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Serialization ends within the type id");
+            }
+        }
+        return getDeserializer(typeByte);
+    }
+
+    /**
+     * A serializer together with everything needed to apply it, so that serializing needs a single lookup.
+     */
+    private static final class SerializerSlot {
+        private final Class<?> type;
+        private final Function<Object, byte[]> function;
+        private final ByteBufferSerializer<Object> bufferSerializer;
+        /**
+         * The type header, followed by the version byte for versioned types.
+         */
+        private final byte[] typeHeader;
+
+        /**
+         * The serializer is typed for <code>type</code> but applied to <code>Object</code>s: the serialize methods only pass objects to it which they claim
+         * to be of <code>type</code>, and a wrong claim surfaces as <code>ClassCastException</code>, which they report as <code>NotSerializableException</code>.
+         */
+        @SuppressWarnings("unchecked")
+        private SerializerSlot(Class<?> type, Function<?, byte[]> function, byte[] typeHeader) {
+            this.type = type;
+            this.function = (Function<Object, byte[]>) function;
+            this.bufferSerializer = function instanceof ByteBufferSerializer ? (ByteBufferSerializer<Object>) function : null;
+            this.typeHeader = typeHeader;
+        }
+    }
+
+    private static final class DeserializerSlot {
+        private final Class<?> type;
+        private final Function<byte[], ?> function;
+        private final ByteBufferDeserializer<?> bufferDeserializer;
+        private final VersionedDeserializer<?> versionedDeserializer;
+        private final ViewDeserializer<?> viewDeserializer;
+
+        private DeserializerSlot(Class<?> type, Function<byte[], ?> function) {
+            this.type = type;
+            this.function = function;
+            this.bufferDeserializer = function instanceof ByteBufferDeserializer ? (ByteBufferDeserializer<?>) function : null;
+            this.versionedDeserializer = function instanceof VersionedDeserializer ? (VersionedDeserializer<?>) function : null;
+            this.viewDeserializer = function instanceof ViewDeserializer ? (ViewDeserializer<?>) function : null;
+        }
     }
 }
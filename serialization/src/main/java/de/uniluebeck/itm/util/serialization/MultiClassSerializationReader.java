@@ -0,0 +1,380 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a stream of objects written by a {@link MultiClassSerializationWriter}, one record at a time.
+ * <p/>
+ * The stream starts with a header consisting of a four byte magic number, a version byte and a flags byte, followed by the records.
+ * Records are read lazily into an internal buffer that grows to the size of the largest record, so arbitrarily long streams can be read
+ * without materializing them. Readers on a {@link ByteBuffer} (e.g. a memory mapped file, see {@link #open(MultiClassSerializationHelper, java.io.File)})
+ * pass views of the buffer to {@link ByteBufferDeserializer}s and don't copy at all. Instances are not thread-safe.
+ * <p/>
+ * Compressed streams are decompressed one block at a time. If they were written with a preset dictionary, the same dictionary has to be passed to the reader.
+ * <p/>
+ * Usage:
+ * <pre>
+ * T object;
+ * while ((object = reader.read()) != null) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <T> the parent type of the objects read
+ */
+public class MultiClassSerializationReader<T> implements Closeable {
+
+    private final MultiClassSerializationHelper<T> helper;
+
+    private final InputStream in;
+
+    private final ReadableByteChannel channel;
+
+    /**
+     * The unread bytes, from position to limit.
+     */
+    private ByteBuffer buffer;
+
+    private final Inflater inflater;
+
+    private final byte[] dictionary;
+
+    /**
+     * The unread bytes of the current decompressed block, from position to limit.
+     */
+    private ByteBuffer block = ByteBuffer.allocate(0);
+
+    public MultiClassSerializationReader(MultiClassSerializationHelper<T> helper, InputStream in) throws IOException {
+        this(helper, in, null, ByteBuffer.allocate(MultiClassSerializationWriter.DEFAULT_BUFFER_SIZE), null);
+    }
+
+    /**
+     * Creates a reader for a stream which may have been compressed with a preset dictionary.
+     *
+     * @param helper     the helper used to deserialize the records
+     * @param in         the stream to read from
+     * @param dictionary the dictionary the stream was compressed with
+     * @throws IOException if the stream does not start with a valid header
+     */
+    public MultiClassSerializationReader(MultiClassSerializationHelper<T> helper, InputStream in, byte[] dictionary) throws IOException {
+        this(helper, in, null, ByteBuffer.allocate(MultiClassSerializationWriter.DEFAULT_BUFFER_SIZE), dictionary);
+    }
+
+    public MultiClassSerializationReader(MultiClassSerializationHelper<T> helper, ReadableByteChannel channel) throws IOException {
+        this(helper, null, channel, ByteBuffer.allocate(MultiClassSerializationWriter.DEFAULT_BUFFER_SIZE), null);
+    }
+
+    /**
+     * Creates a reader for a channel which may have been compressed with a preset dictionary.
+     *
+     * @param helper     the helper used to deserialize the records
+     * @param channel    the channel to read from
+     * @param dictionary the dictionary the stream was compressed with
+     * @throws IOException if the stream does not start with a valid header
+     */
+    public MultiClassSerializationReader(MultiClassSerializationHelper<T> helper, ReadableByteChannel channel, byte[] dictionary) throws IOException {
+        this(helper, null, channel, ByteBuffer.allocate(MultiClassSerializationWriter.DEFAULT_BUFFER_SIZE), dictionary);
+    }
+
+    /**
+     * Creates a reader for the records contained in <code>source</code> between its position and limit. The position of <code>source</code> is not changed.
+     *
+     * @param helper the helper used to deserialize the records
+     * @param source the buffer containing the stream
+     * @throws IOException if the buffer does not start with a valid header
+     */
+    public MultiClassSerializationReader(MultiClassSerializationHelper<T> helper, ByteBuffer source) throws IOException {
+        this(helper, null, null, source.duplicate(), null);
+    }
+
+    /**
+     * Creates a reader for the records contained in <code>source</code> between its position and limit, which may have been compressed with a preset dictionary.
+     * The position of <code>source</code> is not changed.
+     *
+     * @param helper     the helper used to deserialize the records
+     * @param source     the buffer containing the stream
+     * @param dictionary the dictionary the stream was compressed with
+     * @throws IOException if the buffer does not start with a valid header
+     */
+    public MultiClassSerializationReader(MultiClassSerializationHelper<T> helper, ByteBuffer source, byte[] dictionary) throws IOException {
+        this(helper, null, null, source.duplicate(), dictionary);
+    }
+
+    private MultiClassSerializationReader(MultiClassSerializationHelper<T> helper, InputStream in, ReadableByteChannel channel, ByteBuffer buffer,
+                                          byte[] dictionary) throws IOException {
+        if (helper == null) {
+            throw new NullPointerException();
+        }
+        this.helper = helper;
+        this.in = in;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.dictionary = dictionary;
+        if (in != null || channel != null) {
+            buffer.limit(0);
+        }
+        this.inflater = (readHeader() & MultiClassSerializationWriter.FLAG_DEFLATE) != 0 ? new Inflater() : null;
+    }
+
+    /**
+     * Creates a reader on a memory mapped file.
+     *
+     * @param helper the helper used to deserialize the records
+     * @param file   the file containing the stream
+     * @param <T>    the parent type of the objects read
+     * @return a new reader
+     * @throws IOException if the file can't be mapped or does not start with a valid header
+     */
+    public static <T> MultiClassSerializationReader<T> open(MultiClassSerializationHelper<T> helper, File file) throws IOException {
+        return open(helper, file, null);
+    }
+
+    /**
+     * Creates a reader on a memory mapped file which may have been compressed with a preset dictionary.
+     *
+     * @param helper     the helper used to deserialize the records
+     * @param file       the file containing the stream
+     * @param dictionary the dictionary the stream was compressed with
+     * @param <T>        the parent type of the objects read
+     * @return a new reader
+     * @throws IOException if the file can't be mapped or does not start with a valid header
+     */
+    public static <T> MultiClassSerializationReader<T> open(MultiClassSerializationHelper<T> helper, File file, byte[] dictionary) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            return new MultiClassSerializationReader<T>(helper, fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size()), dictionary);
+        } finally {
+            // the mapping stays valid after closing the file
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the deserialized object or <code>null</code> if the end of the stream has been reached
+     * @throws EOFException             if the stream ends within a record
+     * @throws IOException              if reading from the underlying stream or channel fails
+     * @throws IllegalArgumentException if a record can't be deserialized
+     */
+    @SuppressWarnings("unchecked")
+    public T read() throws IOException {
+        return (T) read(false);
+    }
+
+    /**
+     * Reads the next record as a view, see {@link MultiClassSerializationHelper#view(java.nio.ByteBuffer)}.
+     * <p/>
+     * Views of readers on a {@link ByteBuffer} stay valid, as they read the buffer the reader was created with. Views of readers on streams, channels and
+     * compressed data read the reader's internal buffers and are only valid until the next record is read.
+     *
+     * @return the view or <code>null</code> if the end of the stream has been reached
+     * @throws EOFException             if the stream ends within a record
+     * @throws IOException              if reading from the underlying stream or channel fails
+     * @throws IllegalArgumentException if a record can't be deserialized
+     */
+    public Object readView() throws IOException {
+        return read(true);
+    }
+
+    private Object read(boolean view) throws IOException {
+
+        if (inflater != null) {
+            if (!block.hasRemaining() && !readBlock()) {
+                return null;
+            }
+        } else if (!fill(1)) {
+            return null;
+        } else {
+            fill(VarInts.MAX_SIZE);
+        }
+        ByteBuffer records = inflater != null ? block : buffer;
+
+        final int length;
+        try {
+            length = VarInts.read(records);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Stream ends within the length of a record");
+        }
+        if (length < 0) {
+            throw new IOException("Invalid record length " + (length & 0xFFFFFFFFL));
+        }
+        if (inflater != null) {
+            if (length > records.remaining()) {
+                throw new IOException("Record of " + length + " bytes exceeds its block");
+            }
+        } else if (!fill(length)) {
+            throw new EOFException("Stream ends within a record of " + length + " bytes");
+        } else {
+            // the buffer may have been replaced by a larger one
+            records = buffer;
+        }
+
+        final int limit = records.limit();
+        final int end = records.position() + length;
+        records.limit(end);
+        try {
+            return view ? helper.view(records) : helper.deserialize(records);
+        } finally {
+            records.limit(limit);
+            records.position(end);
+        }
+    }
+
+    /**
+     * Closes the underlying stream or channel.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (inflater != null) {
+            inflater.end();
+        }
+        if (in != null) {
+            in.close();
+        } else if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private byte readHeader() throws IOException {
+        if (!fill(MultiClassSerializationWriter.HEADER_SIZE)) {
+            throw new EOFException("Stream ends within the header");
+        }
+        if (buffer.getInt() != MultiClassSerializationWriter.MAGIC) {
+            throw new IOException("Not a stream written by " + MultiClassSerializationWriter.class.getSimpleName());
+        }
+        final byte version = buffer.get();
+        if (version != MultiClassSerializationWriter.VERSION) {
+            throw new IOException("Unsupported stream version " + version);
+        }
+        final byte flags = buffer.get();
+        if ((flags & ~MultiClassSerializationWriter.FLAG_DEFLATE) != 0) {
+            throw new IOException("Unsupported stream flags " + flags);
+        }
+        return flags;
+    }
+
+    /**
+     * Reads and decompresses the next block.
+     *
+     * @return <code>true</code> if a block was read, <code>false</code> if the end of the stream has been reached
+     */
+    private boolean readBlock() throws IOException {
+        if (!fill(1)) {
+            return false;
+        }
+        fill(2 * VarInts.MAX_SIZE);
+
+        final int length;
+        final int compressedLength;
+        try {
+            length = VarInts.read(buffer);
+            compressedLength = VarInts.read(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Stream ends within the length of a block");
+        }
+        if (length < 0 || compressedLength < 0) {
+            throw new IOException("Invalid block length");
+        }
+        if (!fill(compressedLength)) {
+            throw new EOFException("Stream ends within a block of " + compressedLength + " bytes");
+        }
+
+        inflater.reset();
+        if (buffer.hasArray()) {
+            inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), compressedLength);
+        } else {
+            byte[] input = new byte[compressedLength];
+            buffer.duplicate().get(input);
+            inflater.setInput(input);
+        }
+        buffer.position(buffer.position() + compressedLength);
+
+        // one spare byte to detect blocks that are longer than announced
+        if (block.capacity() <= length) {
+            block = ByteBuffer.allocate(length + 1);
+        }
+        final byte[] output = block.array();
+        int inflated = 0;
+        try {
+            while (!inflater.finished() && inflated < output.length) {
+                if (inflater.needsDictionary()) {
+                    if (dictionary == null) {
+                        throw new IOException("Stream was compressed with a dictionary");
+                    }
+                    inflater.setDictionary(dictionary);
+                }
+                final int count = inflater.inflate(output, inflated, output.length - inflated);
+                if (count == 0 && !inflater.needsDictionary()) {
+                    break;
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Stream was compressed with a different dictionary", e);
+        }
+        if (!inflater.finished() || inflated != length) {
+            throw new IOException("Corrupt block");
+        }
+
+        block.clear();
+        block.limit(length);
+        return true;
+    }
+
+    /**
+     * Tries to make at least <code>count</code> bytes available in the buffer.
+     *
+     * @return <code>true</code> if at least <code>count</code> bytes are available, <code>false</code> if the stream ended before
+     */
+    private boolean fill(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return true;
+        }
+        if (in == null && channel == null) {
+            return false;
+        }
+        if (buffer.capacity() < count) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(count, 2 * buffer.capacity()));
+            grown.put(buffer);
+            grown.flip();
+            buffer = grown;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < count) {
+                final int read;
+                if (in != null) {
+                    read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    if (read > 0) {
+                        buffer.position(buffer.position() + read);
+                    }
+                } else {
+                    read = channel.read(buffer);
+                }
+                if (read < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a stream of objects serialized by a {@link MultiClassSerializationHelper}.
+ * <p/>
+ * The stream starts with a header (see {@link MultiClassSerializationReader}), followed by one record per object.
+ * Each record consists of the length of the serialization as a {@link VarInts variable length integer} and the serialization itself (type byte|object serialization).
+ * <p/>
+ * Records are serialized directly into an internal buffer (using {@link ByteBufferSerializer}s where available) which is written to the underlying
+ * stream or channel when it is full, on {@link #flush()} and on {@link #close()}. Objects whose serialization does not fit into the buffer are written
+ * directly. Instances are not thread-safe.
+ * <p/>
+ * Optionally, the records are compressed in blocks of one buffer each. Every block is written as its uncompressed and compressed length
+ * (both {@link VarInts variable length integers}) followed by the block compressed with {@link Deflater} in zlib format. Blocks are compressed
+ * independently, optionally with a preset dictionary, e.g. a concatenation of typical serializations, which considerably improves the compression of
+ * small blocks of repetitive records. The dictionary is not part of the stream and has to be passed to the {@link MultiClassSerializationReader}.
+ *
+ * @param <T> the parent type of the objects written
+ */
+public class MultiClassSerializationWriter<T> implements Closeable, Flushable {
+
+    static final int MAGIC = 0x4D435353;
+
+    static final byte VERSION = 1;
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    static final int HEADER_SIZE = 6;
+
+    static final byte FLAG_DEFLATE = 0x01;
+
+    private final MultiClassSerializationHelper<T> helper;
+
+    private final OutputStream out;
+
+    private final WritableByteChannel channel;
+
+    private final ByteBuffer buffer;
+
+    private final Deflater deflater;
+
+    private final byte[] dictionary;
+
+    private byte[] compressed;
+
+    private final byte[] blockHeader = new byte[2 * VarInts.MAX_SIZE];
+
+    /**
+     * The number of bytes at the start of the buffer which are written uncompressed, i.e. the stream header until the buffer is flushed the first time.
+     */
+    private int uncompressedBytes = HEADER_SIZE;
+
+    /**
+     * The length of the last record, used to guess how many bytes to reserve for the length of the next one.
+     */
+    private int lastLength;
+
+    private boolean closed;
+
+    public MultiClassSerializationWriter(MultiClassSerializationHelper<T> helper, OutputStream out) throws IOException {
+        this(helper, out, null, DEFAULT_BUFFER_SIZE, null, null);
+    }
+
+    public MultiClassSerializationWriter(MultiClassSerializationHelper<T> helper, OutputStream out, int bufferSize) throws IOException {
+        this(helper, out, null, bufferSize, null, null);
+    }
+
+    /**
+     * Creates a writer which compresses the records in blocks of <code>bufferSize</code> bytes.
+     *
+     * @param helper           the helper used to serialize the objects
+     * @param out              the stream to write to
+     * @param bufferSize       the size of the buffer and hence of the uncompressed blocks
+     * @param compressionLevel the {@link Deflater} compression level
+     * @param dictionary       the preset dictionary or <code>null</code>
+     * @throws IOException if writing fails
+     */
+    public MultiClassSerializationWriter(MultiClassSerializationHelper<T> helper, OutputStream out, int bufferSize, int compressionLevel, byte[] dictionary) throws IOException {
+        this(helper, out, null, bufferSize, new Deflater(compressionLevel), dictionary);
+    }
+
+    public MultiClassSerializationWriter(MultiClassSerializationHelper<T> helper, WritableByteChannel channel) throws IOException {
+        this(helper, null, channel, DEFAULT_BUFFER_SIZE, null, null);
+    }
+
+    public MultiClassSerializationWriter(MultiClassSerializationHelper<T> helper, WritableByteChannel channel, int bufferSize) throws IOException {
+        this(helper, null, channel, bufferSize, null, null);
+    }
+
+    /**
+     * Creates a writer which compresses the records in blocks of <code>bufferSize</code> bytes.
+     *
+     * @param helper           the helper used to serialize the objects
+     * @param channel          the channel to write to
+     * @param bufferSize       the size of the buffer and hence of the uncompressed blocks
+     * @param compressionLevel the {@link Deflater} compression level
+     * @param dictionary       the preset dictionary or <code>null</code>
+     * @throws IOException if writing fails
+     */
+    public MultiClassSerializationWriter(MultiClassSerializationHelper<T> helper, WritableByteChannel channel, int bufferSize, int compressionLevel, byte[] dictionary) throws IOException {
+        this(helper, null, channel, bufferSize, new Deflater(compressionLevel), dictionary);
+    }
+
+    private MultiClassSerializationWriter(MultiClassSerializationHelper<T> helper, OutputStream out, WritableByteChannel channel, int bufferSize,
+                                          Deflater deflater, byte[] dictionary) throws IOException {
+        if (helper == null || (out == null && channel == null)) {
+            throw new NullPointerException();
+        }
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("Buffer size must be at least 16 bytes");
+        }
+        this.helper = helper;
+        this.out = out;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.deflater = deflater;
+        this.dictionary = dictionary;
+        this.compressed = deflater != null ? new byte[bufferSize / 2] : null;
+
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put(deflater != null ? FLAG_DEFLATE : 0);
+    }
+
+    /**
+     * Appends a record for <code>object</code>.
+     *
+     * @param object the object to write
+     * @throws java.io.NotSerializableException if the object can't be serialized
+     * @throws IOException                      if writing to the underlying stream or channel fails
+     */
+    public void write(T object) throws IOException {
+        ensureOpen();
+
+        final int start = buffer.position();
+        final int length = helper.writeRecord(object, buffer, lastLength);
+        if (length >= 0) {
+            lastLength = length;
+        } else if (start > 0) {
+            flushBuffer();
+            write(object);
+        } else {
+            writeDirectly(helper.serialize(object));
+        }
+    }
+
+    /**
+     * Writes all buffered records to the underlying stream or channel and flushes the stream.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Flushes and closes the underlying stream or channel.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            closed = true;
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (out != null) {
+                out.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+
+    private void writeDirectly(byte[] serialization) throws IOException {
+        if (deflater != null) {
+            byte[] record = new byte[VarInts.sizeOf(serialization.length) + serialization.length];
+            System.arraycopy(serialization, 0, record, VarInts.write(record, 0, serialization.length), serialization.length);
+            writeBlock(record, 0, record.length);
+        } else {
+            VarInts.write(buffer, serialization.length);
+            flushBuffer();
+            write(ByteBuffer.wrap(serialization));
+        }
+        lastLength = serialization.length;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        try {
+            if (deflater == null) {
+                write(buffer);
+            } else {
+                if (uncompressedBytes > 0) {
+                    write(ByteBuffer.wrap(buffer.array(), 0, uncompressedBytes));
+                }
+                if (buffer.limit() > uncompressedBytes) {
+                    writeBlock(buffer.array(), uncompressedBytes, buffer.limit() - uncompressedBytes);
+                }
+                uncompressedBytes = 0;
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeBlock(byte[] block, int offset, int length) throws IOException {
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(block, offset, length);
+        deflater.finish();
+
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        final int headerLength = VarInts.write(blockHeader, VarInts.write(blockHeader, 0, length), compressedLength);
+        write(ByteBuffer.wrap(blockHeader, 0, headerLength));
+        write(ByteBuffer.wrap(compressed, 0, compressedLength));
+    }
+
+    private void write(ByteBuffer source) throws IOException {
+        if (out != null) {
+            out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            source.position(source.limit());
+        } else {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A buffer borrowed from a {@link SerializationBufferPool}, to be returned by calling {@link #close()}, e.g. in a <code>finally</code> block or a
+ * try-with-resources statement. Neither the handle nor its buffer must be used after closing it, as both are handed out again by the pool.
+ */
+public final class PooledBuffer implements Closeable {
+
+    private final SerializationBufferPool pool;
+
+    private ByteBuffer buffer;
+
+    private boolean released;
+
+    PooledBuffer(SerializationBufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the buffer. After {@link MultiClassSerializationHelper#serialize(Object, SerializationBufferPool)}, the serialization spans from its position to its limit.
+     *
+     * @return the buffer
+     * @throws IllegalStateException if the buffer has already been released
+     */
+    public ByteBuffer getBuffer() {
+        if (released) {
+            throw new IllegalStateException("Buffer has already been released");
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool. Closing a handle again has no effect, as long as the pool has not handed it out again.
+     */
+    @Override
+    public void close() {
+        if (!released) {
+            released = true;
+            pool.release(this);
+        }
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    void acquired() {
+        released = false;
+        buffer.clear();
+    }
+}
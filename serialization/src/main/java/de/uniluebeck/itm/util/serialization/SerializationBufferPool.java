@@ -0,0 +1,97 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of reusable buffers for {@link MultiClassSerializationHelper#serialize(Object, SerializationBufferPool)}.
+ * <p/>
+ * Released buffers are kept in a small per-thread cache, so acquiring and releasing them needs no synchronization and a thread that serializes and
+ * writes objects in a loop reuses the same buffer over and over. Buffers grow on demand; buffers that have grown beyond the maximum pooled size are
+ * discarded on release instead of being kept. Buffers released by another thread than the one that acquired them are cached by the releasing thread.
+ * <p/>
+ * Instances are thread-safe and meant to be shared, e.g. one per helper.
+ */
+public class SerializationBufferPool {
+
+    public static final int DEFAULT_INITIAL_SIZE = 1024;
+
+    public static final int DEFAULT_MAX_POOLED_SIZE = 1024 * 1024;
+
+    /**
+     * The maximum number of idle buffers cached per thread, enough for a few buffers being in use at the same time.
+     */
+    private static final int MAX_IDLE_PER_THREAD = 4;
+
+    private final int initialSize;
+
+    private final int maxPooledSize;
+
+    private final boolean direct;
+
+    private final ThreadLocal<ArrayDeque<PooledBuffer>> idle = new ThreadLocal<ArrayDeque<PooledBuffer>>() {
+        @Override
+        protected ArrayDeque<PooledBuffer> initialValue() {
+            return new ArrayDeque<PooledBuffer>(MAX_IDLE_PER_THREAD);
+        }
+    };
+
+    /**
+     * Creates a pool of heap buffers with the default sizes.
+     */
+    public SerializationBufferPool() {
+        this(DEFAULT_INITIAL_SIZE, DEFAULT_MAX_POOLED_SIZE, false);
+    }
+
+    /**
+     * Creates a new pool.
+     *
+     * @param initialSize   the initial capacity of new buffers
+     * @param maxPooledSize the maximum capacity of buffers which are reused after being released
+     * @param direct        <code>true</code> to pool direct buffers, <code>false</code> for heap buffers
+     * @throws IllegalArgumentException if <code>initialSize</code> is not positive or larger than <code>maxPooledSize</code>
+     */
+    public SerializationBufferPool(int initialSize, int maxPooledSize, boolean direct) {
+        if (initialSize <= 0 || initialSize > maxPooledSize) {
+            throw new IllegalArgumentException("Initial size must be positive and not larger than the maximum pooled size");
+        }
+        this.initialSize = initialSize;
+        this.maxPooledSize = maxPooledSize;
+        this.direct = direct;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool or allocates a new one if the calling thread has no idle buffer.
+     *
+     * @return the buffer, to be released by calling {@link PooledBuffer#close()}
+     */
+    public PooledBuffer acquire() {
+        PooledBuffer pooled = idle.get().pollFirst();
+        if (pooled == null) {
+            pooled = new PooledBuffer(this, allocate(initialSize));
+        }
+        pooled.acquired();
+        return pooled;
+    }
+
+    /**
+     * Replaces the buffer of <code>pooled</code> by an empty buffer of twice its capacity.
+     */
+    void grow(PooledBuffer pooled) {
+        pooled.setBuffer(allocate(2 * pooled.getBuffer().capacity()));
+    }
+
+    void release(PooledBuffer pooled) {
+        if (pooled.getCapacity() > maxPooledSize) {
+            return;
+        }
+        ArrayDeque<PooledBuffer> deque = idle.get();
+        if (deque.size() < MAX_IDLE_PER_THREAD) {
+            deque.offerFirst(pooled);
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,30 @@
+package de.uniluebeck.itm.util.serialization;
+
+/**
+ * A sink for per-type metrics of a {@link MultiClassSerializationHelper}, see {@link MultiClassSerializationHelper#setMetrics(SerializationMetrics)}.
+ * <p/>
+ * Implementations are called synchronously by the serializing and deserializing threads and therefore have to be thread-safe and fast.
+ *
+ * @see SerializationStatistics
+ */
+public interface SerializationMetrics {
+
+    /**
+     * Called after an object has been serialized.
+     *
+     * @param type  the serializer type
+     * @param bytes the length of the serialization, including the type header
+     * @param nanos the time needed to serialize the object
+     */
+    void serialized(Class<?> type, int bytes, long nanos);
+
+    /**
+     * Called after an object has been deserialized.
+     *
+     * @param type  the type the deserializer is registered for
+     * @param bytes the length of the serialization, including the type header
+     * @param nanos the time needed to deserialize the object
+     */
+    void deserialized(Class<?> type, int bytes, long nanos);
+
+}
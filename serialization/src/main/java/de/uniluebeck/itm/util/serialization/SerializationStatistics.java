@@ -0,0 +1,158 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link SerializationMetrics} sink which counts serializations and deserializations per type: the number of objects and bytes,
+ * the total time and a histogram of the time per call.
+ * <p/>
+ * The histogram has one bucket per power of two nanoseconds: bucket <code>i</code> counts the calls which took at least <code>2^(i-1)</code>
+ * and less than <code>2^i</code> nanoseconds, bucket zero the calls which took no measurable time.
+ */
+public class SerializationStatistics implements SerializationMetrics {
+
+    static final int HISTOGRAM_BUCKETS = 64;
+
+    private final ConcurrentMap<Class<?>, TypeStatistics> types = new ConcurrentHashMap<Class<?>, TypeStatistics>();
+
+    @Override
+    public void serialized(Class<?> type, int bytes, long nanos) {
+        getOrCreate(type).serialization.record(bytes, nanos);
+    }
+
+    @Override
+    public void deserialized(Class<?> type, int bytes, long nanos) {
+        getOrCreate(type).deserialization.record(bytes, nanos);
+    }
+
+    /**
+     * Returns the statistics of a type.
+     *
+     * @param type the type
+     * @return the statistics or <code>null</code> if no object of the type has been serialized or deserialized yet
+     */
+    public TypeStatistics getStatistics(Class<?> type) {
+        return types.get(type);
+    }
+
+    /**
+     * Returns the statistics of all types seen so far.
+     *
+     * @return an unmodifiable live view of the statistics by type
+     */
+    public Map<Class<?>, TypeStatistics> getStatistics() {
+        return Collections.unmodifiableMap(types);
+    }
+
+    private TypeStatistics getOrCreate(Class<?> type) {
+        TypeStatistics statistics = types.get(type);
+        if (statistics == null) {
+            TypeStatistics created = new TypeStatistics();
+            statistics = types.putIfAbsent(type, created);
+            if (statistics == null) {
+                statistics = created;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * The statistics of one type.
+     */
+    public static class TypeStatistics {
+
+        private final OperationStatistics serialization = new OperationStatistics();
+
+        private final OperationStatistics deserialization = new OperationStatistics();
+
+        public OperationStatistics getSerialization() {
+            return serialization;
+        }
+
+        public OperationStatistics getDeserialization() {
+            return deserialization;
+        }
+
+        @Override
+        public String toString() {
+            return "TypeStatistics{serialization=" + serialization + ", deserialization=" + deserialization + "}";
+        }
+    }
+
+    /**
+     * The statistics of the serializations or deserializations of one type. The counters are updated independently, so values read while objects are being
+     * processed may be slightly inconsistent with each other.
+     */
+    public static class OperationStatistics {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        void record(int bytes, long nanos) {
+            this.count.incrementAndGet();
+            this.bytes.addAndGet(bytes);
+            this.nanos.addAndGet(nanos);
+            this.histogram.incrementAndGet(Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos))));
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getTotalNanos() {
+            return nanos.get();
+        }
+
+        /**
+         * Returns the average length of the serializations.
+         *
+         * @return the average length in bytes or zero if the count is zero
+         */
+        public double getAverageSize() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) getBytes() / count;
+        }
+
+        /**
+         * Returns the average time per call.
+         *
+         * @return the average time in nanoseconds or zero if the count is zero
+         */
+        public double getAverageNanos() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) getTotalNanos() / count;
+        }
+
+        /**
+         * Returns a copy of the histogram of the time per call.
+         *
+         * @return the number of calls per bucket, see {@link SerializationStatistics}
+         */
+        public long[] getTimeHistogram() {
+            long[] copy = new long[HISTOGRAM_BUCKETS];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = histogram.get(i);
+            }
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return "OperationStatistics{count=" + getCount() + ", bytes=" + getBytes() + ", averageSize=" + getAverageSize() + ", averageNanos=" + getAverageNanos() + "}";
+        }
+    }
+}
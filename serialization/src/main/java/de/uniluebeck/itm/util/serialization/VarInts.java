@@ -0,0 +1,117 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Helper functions for variable length encoded unsigned integers as used for record lengths by {@link MultiClassSerializationWriter}.
+ * <p/>
+ * A value is encoded in groups of seven bits, least significant group first. The most significant bit of each byte is set if another byte follows.
+ * Values below 128 therefore take one byte, values below 16384 two bytes and so on, up to five bytes for the full 32 bit range.
+ */
+public final class VarInts {
+
+    /**
+     * The maximum number of bytes of an encoded value.
+     */
+    public static final int MAX_SIZE = 5;
+
+    private VarInts() {
+    }
+
+    /**
+     * Returns the number of bytes needed to encode <code>value</code>, which is interpreted as unsigned.
+     *
+     * @param value the value
+     * @return the encoded size in bytes, between 1 and {@link #MAX_SIZE}
+     */
+    public static int sizeOf(int value) {
+        if ((value & (~0 << 7)) == 0) {
+            return 1;
+        }
+        if ((value & (~0 << 14)) == 0) {
+            return 2;
+        }
+        if ((value & (~0 << 21)) == 0) {
+            return 3;
+        }
+        if ((value & (~0 << 28)) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /**
+     * Writes <code>value</code>, interpreted as unsigned, at the current position of <code>target</code>.
+     *
+     * @param target the buffer to write to
+     * @param value  the value
+     * @throws java.nio.BufferOverflowException if <code>target</code> has not enough space remaining
+     */
+    public static void write(ByteBuffer target, int value) {
+        while ((value & ~0x7F) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+
+    /**
+     * Writes <code>value</code>, interpreted as unsigned, into <code>target</code> at <code>offset</code>.
+     *
+     * @param target the array to write to
+     * @param offset the offset of the first byte
+     * @param value  the value
+     * @return the offset behind the last byte written
+     * @throws ArrayIndexOutOfBoundsException if <code>target</code> is too short
+     */
+    public static int write(byte[] target, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            target[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Reads a value from the current position of <code>source</code>.
+     *
+     * @param source the buffer to read from
+     * @return the value, to be interpreted as unsigned
+     * @throws BufferUnderflowException if <code>source</code> ends before the end of the value
+     * @throws IllegalArgumentException if the value is longer than {@link #MAX_SIZE} bytes
+     */
+    public static int read(ByteBuffer source) throws BufferUnderflowException, IllegalArgumentException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_SIZE; shift += 7) {
+            final byte b = source.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    /**
+     * Reads a value from <code>source</code> at <code>offset</code>. The number of bytes read can be determined using {@link #sizeOf(int)} on the returned value.
+     *
+     * @param source the array to read from
+     * @param offset the offset of the first byte
+     * @return the value, to be interpreted as unsigned
+     * @throws ArrayIndexOutOfBoundsException if <code>source</code> ends before the end of the value
+     * @throws IllegalArgumentException       if the value is longer than {@link #MAX_SIZE} bytes
+     */
+    public static int read(byte[] source, int offset) throws IllegalArgumentException {
+        int value = 0;
+        for (int shift = 0; shift < 7 * MAX_SIZE; shift += 7) {
+            final byte b = source[offset++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+}
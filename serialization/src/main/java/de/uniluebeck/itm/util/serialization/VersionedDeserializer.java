@@ -0,0 +1,25 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for deserializer functions of types whose serializer implements {@link VersionedSerializer}.
+ * <p/>
+ * The helper calls {@link #deserialize(java.nio.ByteBuffer, byte)} instead of {@link com.google.common.base.Function#apply(Object)}, passing the
+ * version the serialization was written with.
+ *
+ * @param <T> the type of objects deserialized by this deserializer
+ */
+public interface VersionedDeserializer<T> {
+
+    /**
+     * Reads an object from <code>source</code>, which contains the serialization written by version <code>version</code> of the serializer
+     * between its position and limit.
+     *
+     * @param source  the buffer to read from
+     * @param version the version the serialization was written with
+     * @return the deserialized object
+     */
+    T deserialize(ByteBuffer source, byte version);
+
+}
@@ -0,0 +1,21 @@
+package de.uniluebeck.itm.util.serialization;
+
+/**
+ * Optional interface for serializer functions registered at a {@link MultiClassSerializationHelper} whose serialization format evolves over time.
+ * <p/>
+ * The helper writes the version returned by {@link #getVersion()} behind the type header of each serialization, and passes it to the
+ * {@link VersionedDeserializer} of the type when deserializing. Deserializers can thereby decode payloads written by older versions of the serializer
+ * directly, without migrating stored data first. A type is either versioned or not: its serializer implements this interface if and only if its
+ * deserializer implements {@link VersionedDeserializer}. As the version byte changes the serialization format, a type that was stored without
+ * versions has to be assigned a new type id when it becomes versioned.
+ */
+public interface VersionedSerializer {
+
+    /**
+     * Returns the version of the serializations written by this serializer. The version is read once when the helper is constructed.
+     *
+     * @return the current version
+     */
+    byte getVersion();
+
+}
@@ -0,0 +1,27 @@
+package de.uniluebeck.itm.util.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Optional interface for deserializer functions registered at a {@link MultiClassSerializationHelper} that can expose a serialization without
+ * decoding it completely.
+ * <p/>
+ * {@link MultiClassSerializationHelper#view(java.nio.ByteBuffer)} passes the serialization to {@link #view(java.nio.ByteBuffer, byte)}, which returns an
+ * object that decodes its fields lazily from the buffer when they are accessed. Jobs that only need a few fields of each object, e.g. to filter
+ * replayed events by their timestamp, thereby avoid materializing the objects.
+ *
+ * @param <V> the type of the views
+ */
+public interface ViewDeserializer<V> {
+
+    /**
+     * Creates a view on the serialization contained in <code>source</code> from index zero to its limit. The view may keep and read <code>source</code>
+     * for as long as it is used, but must not modify it.
+     *
+     * @param source  the buffer containing the serialization
+     * @param version the version the serialization was written with if the type is versioned (see {@link VersionedSerializer}), zero otherwise
+     * @return the view
+     */
+    V view(ByteBuffer source, byte version);
+
+}
@@ -2,6 +2,7 @@ package de.uniluebeck.itm.util.serialization;
 
 
 import com.google.common.base.Function;
+import com.google.common.base.Strings;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
 import junit.framework.TestCase;
@@ -16,8 +17,14 @@ import java.io.File;
 import java.io.NotSerializableException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @RunWith(BlockJUnit4ClassRunner.class)
 public class MultiClassSerializationHelperTest extends TestCase {
@@ -210,5 +217,464 @@ public class MultiClassSerializationHelperTest extends TestCase {
         new MultiClassSerializationHelper(buildDefaultSerializers(), buildDefaultDeserializers(), mapping);
     }
 
+    @Test
+    public void testByteBufferSerializationMatchesArraySerialization() throws Exception {
+        final String test = "Test";
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.position(10);
+
+        int written = serializationHelper.serialize(test, buffer);
+
+        assertEquals(test.getBytes().length + 1, written);
+        assertEquals(10 + written, buffer.position());
+        byte[] bytes = new byte[written];
+        buffer.flip();
+        buffer.position(10);
+        buffer.duplicate().get(bytes);
+        Assert.assertArrayEquals(serializationHelper.serialize(test), bytes);
+        assertEquals(test, serializationHelper.deserialize(buffer));
+        assertEquals(buffer.limit(), buffer.position());
+    }
+
+    @Test
+    public void testByteBufferAwareFunctionsAreUsed() throws Exception {
+        Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+        serializers.put(Long.class, new LongSerializer());
+        Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+        deserializers.put(Long.class, new LongDeserializer());
+        MultiClassSerializationHelper helper = new MultiClassSerializationHelper(serializers, deserializers, MultiClassSerializationHelper.buildClassByteMap(serializers, deserializers));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(9);
+        assertEquals(9, helper.serialize(42L, buffer));
+        buffer.flip();
+        assertEquals(42L, helper.deserialize(buffer));
+        assertEquals(42L, helper.deserialize(helper.serialize(42L)));
+    }
+
+    @Test
+    public void testByteBufferOverflowLeavesPositionUnchanged() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        buffer.put((byte) 1);
+        try {
+            serializationHelper.serialize("Test", buffer);
+            fail();
+        } catch (BufferOverflowException expected) {
+            assertEquals(1, buffer.position());
+        }
+    }
+
+    @Test
+    public void testBatchSerializationRoundTrip() throws Exception {
+        List<Object> objects = new ArrayList<Object>();
+        objects.add("Test");
+        objects.add(BigInteger.valueOf(Long.MAX_VALUE).pow(3));
+        objects.add((byte) 42);
+        objects.add(new String(new char[300]).replace('\0', 'x'));
+
+        ByteBuffer framed = serializationHelper.serializeBatch(objects);
+
+        assertEquals(objects, serializationHelper.deserializeBatch(framed));
+        assertEquals(framed.limit(), framed.position());
+    }
+
+    @Test
+    public void testParallelBatchSerializationMatchesSequential() throws Exception {
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 5000; i++) {
+            objects.add(i % 2 == 0 ? (Object) ("Test" + i) : BigInteger.valueOf(i).shiftLeft(i % 100));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ByteBuffer sequential = serializationHelper.serializeBatch(objects);
+            ByteBuffer parallel = serializationHelper.serializeBatch(objects, executor, 4);
+
+            assertEquals(sequential, parallel);
+            assertEquals(objects, serializationHelper.deserializeBatch(parallel, executor, 4));
+            assertEquals(objects, serializationHelper.deserializeBatch(sequential));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchDeserializationRejectsTruncatedBuffer() throws Exception {
+        List<Object> objects = new ArrayList<Object>();
+        objects.add("Test");
+        objects.add("Test");
+        ByteBuffer framed = serializationHelper.serializeBatch(objects);
+        framed.limit(framed.limit() - 1);
+        try {
+            serializationHelper.deserializeBatch(framed);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testExtendedTypeIds() throws Exception {
+        BiMap<Class<?>, Integer> ids = HashBiMap.create();
+        ids.put(String.class, 5);
+        ids.put(BigInteger.class, 127);
+        ids.put(Byte.class, 1000);
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> helper = MultiClassSerializationHelper.buildHelperWithClassIdMap((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers(), (BiMap) ids);
+
+        byte[] string = helper.serialize("Test");
+        assertEquals(5, string.length);
+        assertEquals(5, string[0]);
+
+        byte[] bigInteger = helper.serialize(BigInteger.TEN);
+        assertEquals(2, bigInteger.length);
+        assertEquals(Byte.MAX_VALUE, bigInteger[0]);
+
+        // the largest unassigned type byte marks extended ids
+        byte[] b = helper.serialize((byte) 42);
+        assertEquals(4, b.length);
+        assertEquals(Byte.MAX_VALUE - 1, b[0]);
+
+        assertEquals("Test", helper.deserialize(string));
+        assertEquals(BigInteger.TEN, helper.deserialize(bigInteger));
+        assertEquals((byte) 42, helper.deserialize(b));
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        assertEquals(4, helper.serialize((byte) 42, buffer));
+        buffer.flip();
+        assertEquals((byte) 42, helper.deserialize(buffer));
+    }
+
+    @Test
+    public void testExtendedTypeIdsReadClassByteMappingSerializations() throws Exception {
+        BiMap<Class<?>, Byte> bytes = HashBiMap.create();
+        bytes.put(String.class, Byte.MIN_VALUE);
+        bytes.put(BigInteger.class, Byte.MAX_VALUE);
+        Map<Class<?>, Function<?, byte[]>> serializers = buildDefaultSerializers();
+        serializers.remove(Byte.class);
+        Map<Class<?>, Function<byte[], ?>> deserializers = buildDefaultDeserializers();
+        deserializers.remove(Byte.class);
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> byteHelper = new MultiClassSerializationHelper<Object>((Map) serializers, (Map) deserializers, (BiMap) bytes);
+        byte[] legacy = byteHelper.serialize(BigInteger.valueOf(300));
+        assertEquals(Byte.MAX_VALUE, legacy[0]);
+
+        BiMap<Class<?>, Integer> ids = HashBiMap.create();
+        ids.put(String.class, (int) Byte.MIN_VALUE);
+        ids.put(BigInteger.class, (int) Byte.MAX_VALUE);
+        ids.put(Byte.class, 200);
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> extendedHelper = MultiClassSerializationHelper.buildHelperWithClassIdMap((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers(), (BiMap) ids);
+
+        assertEquals(BigInteger.valueOf(300), extendedHelper.deserialize(legacy));
+        assertEquals(BigInteger.valueOf(300), extendedHelper.deserialize(ByteBuffer.wrap(legacy)));
+        Assert.assertArrayEquals(legacy, extendedHelper.serialize(BigInteger.valueOf(300)));
+        assertEquals((byte) 42, extendedHelper.deserialize(extendedHelper.serialize((byte) 42)));
+    }
+
+    @Test
+    public void testExtendedTypeIdsRequireAnUnassignedTypeByte() throws Exception {
+        Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+        Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+        BiMap<Class<?>, Integer> ids = HashBiMap.create();
+        // array classes of increasing dimension serve as 257 distinct classes
+        for (int id = Byte.MIN_VALUE; id <= Byte.MAX_VALUE + 1; id++) {
+            Class<?> type = java.lang.reflect.Array.newInstance(id < 0 ? String.class : Integer.class, new int[1 + (id < 0 ? id - Byte.MIN_VALUE : id)]).getClass();
+            serializers.put(type, buildDefaultSerializers().get(String.class));
+            deserializers.put(type, buildDefaultDeserializers().get(String.class));
+            ids.put(type, id);
+        }
+        try {
+            //noinspection unchecked
+            MultiClassSerializationHelper.buildHelperWithClassIdMap((Map) new HashMap<Class<?>, Function<?, byte[]>>(serializers),
+                    (Map) new HashMap<Class<?>, Function<byte[], ?>>(deserializers), (BiMap) ids);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().startsWith("All type bytes are assigned"));
+        }
+
+        // a class without existing serializations moved beyond the byte range frees its type byte as marker
+        Class<?> moved = ids.inverse().get((int) Byte.MAX_VALUE);
+        ids.put(moved, Byte.MAX_VALUE + 2);
+        //noinspection unchecked
+        MultiClassSerializationHelper.buildHelperWithClassIdMap((Map) serializers, (Map) deserializers, (BiMap) ids);
+    }
+
+    @Test
+    public void testBuiltClassIdMapLeavesMarkerUnassigned() throws Exception {
+        Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+        Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+        for (int i = 0; i < 257; i++) {
+            Class<?> type = java.lang.reflect.Array.newInstance(i < 200 ? String.class : Integer.class, new int[1 + i % 200]).getClass();
+            serializers.put(type, buildDefaultSerializers().get(String.class));
+            deserializers.put(type, buildDefaultDeserializers().get(String.class));
+        }
+        //noinspection unchecked
+        BiMap<Class<?>, Integer> ids = (BiMap) MultiClassSerializationHelper.buildClassIdMap((Map) serializers, (Map) deserializers);
+        assertFalse(ids.containsValue((int) Byte.MAX_VALUE));
+        //noinspection unchecked
+        MultiClassSerializationHelper.buildHelperWithClassIdMap((Map) serializers, (Map) deserializers, (BiMap) ids);
+    }
+
+    @Test
+    public void testClassIdMappingFileReadsClassByteMappingFiles() throws Exception {
+        File file = File.createTempFile("MultiClassSerializationHelper", ".mapping");
+        file.deleteOnExit();
+        BiMap<Class<?>, Byte> bytes = MultiClassSerializationHelper.buildClassByteMap((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers());
+        MultiClassSerializationHelper.storeClassByteMap(file, (BiMap) bytes);
+
+        BiMap<Class<?>, Integer> ids = MultiClassSerializationHelper.loadClassIdMap(file);
+        assertEquals(bytes.size(), ids.size());
+        for (Map.Entry<Class<?>, Byte> entry : bytes.entrySet()) {
+            assertEquals(entry.getValue().intValue(), ids.get(entry.getKey()).intValue());
+        }
+
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> byteHelper = new MultiClassSerializationHelper<Object>((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers(), (BiMap) bytes);
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> idHelper = MultiClassSerializationHelper.buildHelperWithClassIdMap((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers(), (BiMap) ids);
+        Assert.assertArrayEquals(byteHelper.serialize("Test"), idHelper.serialize("Test"));
+
+        ids.put(String.class, 300);
+        MultiClassSerializationHelper.storeClassIdMap(file, (BiMap) ids);
+        assertEquals(300, MultiClassSerializationHelper.loadClassIdMap(file).get(String.class).intValue());
+        try {
+            MultiClassSerializationHelper.loadClassByteMap(file);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testPooledSerializationReusesBuffers() throws Exception {
+        SerializationBufferPool pool = new SerializationBufferPool(4, 1024, false);
+        String test = "Test";
+
+        PooledBuffer pooled = serializationHelper.serialize(test, pool);
+        ByteBuffer buffer = pooled.getBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        Assert.assertArrayEquals(serializationHelper.serialize(test), bytes);
+        assertEquals(test, serializationHelper.deserialize(buffer));
+        pooled.close();
+
+        PooledBuffer reused = serializationHelper.serialize(test, pool);
+        assertSame(pooled, reused);
+        assertSame(buffer, reused.getBuffer());
+        reused.close();
+        try {
+            reused.getBuffer();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        PooledBuffer large = serializationHelper.serialize(Strings.repeat("x", 2000), pool);
+        assertEquals(2001, large.getBuffer().remaining());
+        large.close();
+        assertNotSame(large, serializationHelper.serialize(test, pool));
+    }
+
+    @Test
+    public void testHelperFromCompiledClassIdMapping() throws Exception {
+        File csv = File.createTempFile("MultiClassSerializationHelper", ".mapping");
+        csv.deleteOnExit();
+        File binary = new File(csv.getPath() + ".bin");
+        binary.deleteOnExit();
+        BiMap<Class<?>, Integer> ids = HashBiMap.create();
+        ids.put(String.class, -128);
+        ids.put(BigInteger.class, 0);
+        ids.put(Byte.class, 300);
+        MultiClassSerializationHelper.storeClassIdMap(csv, (BiMap) ids);
+
+        ClassIdMapping compiled = ClassIdMapping.compile(csv, binary);
+        ClassIdMapping loaded = ClassIdMapping.loadOrCompile(csv, binary);
+        assertEquals(ids, compiled.toClassIdMap());
+        assertEquals(ids, loaded.toClassIdMap());
+
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> helper = MultiClassSerializationHelper.buildHelperWithClassIdMapping((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers(), loaded);
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> reference = MultiClassSerializationHelper.buildHelperWithClassIdMap((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers(), (BiMap) ids);
+        for (Object object : new Object[]{"Test", BigInteger.TEN, (byte) 7}) {
+            Assert.assertArrayEquals(reference.serialize(object), helper.serialize(object));
+            assertEquals(object, helper.deserialize(reference.serialize(object)));
+        }
+        assertEquals(ids, helper.getClassIdMapping());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHelperFromClassIdMappingRejectsMissingClasses() throws Exception {
+        BiMap<Class<?>, Integer> ids = HashBiMap.create();
+        ids.put(String.class, 1);
+        ids.put(BigInteger.class, 2);
+        //noinspection unchecked
+        MultiClassSerializationHelper.buildHelperWithClassIdMapping((Map) buildDefaultSerializers(), (Map) buildDefaultDeserializers(), ClassIdMapping.of(ids));
+    }
+
+    @Test
+    public void testVersionedTypesAndViews() throws Exception {
+        Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+        serializers.put(Event.class, new EventSerializer((byte) 2));
+        Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+        deserializers.put(Event.class, new EventDeserializer());
+        //noinspection unchecked
+        MultiClassSerializationHelper<Object> helper = new MultiClassSerializationHelper<Object>((Map) serializers, (Map) deserializers,
+                (BiMap) MultiClassSerializationHelper.buildClassByteMap((Map) serializers, (Map) deserializers));
+
+        Event event = new Event(42L, "Test");
+        byte[] serialization = helper.serialize(event);
+        assertEquals(1 + 1 + 8 + 4, serialization.length);
+        assertEquals(event, helper.deserialize(serialization));
+
+        // version 1 serializations lack the timestamp
+        byte[] old = new byte[]{serialization[0], 1, 'T', 'e', 's', 't'};
+        assertEquals(new Event(0, "Test"), helper.deserialize(old));
+
+        ByteBuffer buffer = ByteBuffer.wrap(serialization);
+        assertEquals(Event.class, helper.getType(buffer));
+        assertEquals(0, buffer.position());
+        EventView view = (EventView) helper.view(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+        assertEquals(42L, view.getTimestamp());
+        assertEquals(0L, ((EventView) helper.view(old)).getTimestamp());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVersionedSerializerRequiresVersionedDeserializer() throws Exception {
+        Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+        serializers.put(Event.class, new EventSerializer((byte) 1));
+        Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+        deserializers.put(Event.class, new Function<byte[], Event>() {
+            @Override
+            public Event apply(byte[] bytes) {
+                return null;
+            }
+        });
+        //noinspection unchecked
+        new MultiClassSerializationHelper<Object>((Map) serializers, (Map) deserializers, (BiMap) MultiClassSerializationHelper.buildClassByteMap((Map) serializers, (Map) deserializers));
+    }
+
+    @Test
+    public void testStatisticsAreCollectedPerType() throws Exception {
+        SerializationStatistics statistics = new SerializationStatistics();
+        serializationHelper.serialize("Test");
+        assertNull(serializationHelper.getMetrics());
+
+        serializationHelper.setMetrics(statistics);
+        byte[] string = serializationHelper.serialize("Test");
+        serializationHelper.serialize("Longer test", ByteBuffer.allocate(64));
+        serializationHelper.deserialize(string);
+        serializationHelper.deserialize(ByteBuffer.wrap(serializationHelper.serialize(BigInteger.ONE)));
+
+        SerializationStatistics.OperationStatistics serialization = statistics.getStatistics(String.class).getSerialization();
+        assertEquals(2, serialization.getCount());
+        assertEquals(5 + 12, serialization.getBytes());
+        assertEquals(8.5, serialization.getAverageSize(), 0);
+        long calls = 0;
+        for (long bucket : serialization.getTimeHistogram()) {
+            calls += bucket;
+        }
+        assertEquals(2, calls);
+        assertEquals(1, statistics.getStatistics(String.class).getDeserialization().getCount());
+        assertEquals(1, statistics.getStatistics(BigInteger.class).getDeserialization().getCount());
+        assertNull(statistics.getStatistics(Byte.class));
+
+        serializationHelper.setMetrics(null);
+        serializationHelper.serialize("Test");
+        assertEquals(2, serialization.getCount());
+    }
+
+    private static class Event {
+        private final long timestamp;
+        private final String name;
+
+        private Event(long timestamp, String name) {
+            this.timestamp = timestamp;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Event && ((Event) o).timestamp == timestamp && ((Event) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
 
+    private static class EventView {
+        private final ByteBuffer source;
+        private final byte version;
+
+        private EventView(ByteBuffer source, byte version) {
+            this.source = source;
+            this.version = version;
+        }
+
+        private long getTimestamp() {
+            return version >= 2 ? source.getLong(0) : 0;
+        }
+    }
+
+    private static class EventSerializer implements Function<Event, byte[]>, VersionedSerializer {
+        private final byte version;
+
+        private EventSerializer(byte version) {
+            this.version = version;
+        }
+
+        @Override
+        public byte[] apply(Event event) {
+            byte[] name = event.name.getBytes();
+            return ByteBuffer.allocate(8 + name.length).putLong(event.timestamp).put(name).array();
+        }
+
+        @Override
+        public byte getVersion() {
+            return version;
+        }
+    }
+
+    private static class EventDeserializer implements Function<byte[], Event>, VersionedDeserializer<Event>, ViewDeserializer<EventView> {
+        @Override
+        public Event apply(byte[] bytes) {
+            throw new AssertionError("Versioned deserialization expected");
+        }
+
+        @Override
+        public Event deserialize(ByteBuffer source, byte version) {
+            long timestamp = version >= 2 ? source.getLong() : 0;
+            byte[] name = new byte[source.remaining()];
+            source.get(name);
+            return new Event(timestamp, new String(name));
+        }
+
+        @Override
+        public EventView view(ByteBuffer source, byte version) {
+            return new EventView(source, version);
+        }
+    }
+
+    private static class LongSerializer implements Function<Long, byte[]>, ByteBufferSerializer<Long> {
+        @Override
+        public byte[] apply(Long value) {
+            return ByteBuffer.allocate(8).putLong(0, value).array();
+        }
+
+        @Override
+        public void serialize(Long value, ByteBuffer target) {
+            target.putLong(value);
+        }
+    }
+
+    private static class LongDeserializer implements Function<byte[], Long>, ByteBufferDeserializer<Long> {
+        @Override
+        public Long apply(byte[] bytes) {
+            throw new AssertionError("ByteBuffer path expected");
+        }
+
+        @Override
+        public Long deserialize(ByteBuffer source) {
+            return source.getLong(source.position());
+        }
+    }
 }
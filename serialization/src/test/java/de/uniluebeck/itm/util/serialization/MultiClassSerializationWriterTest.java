@@ -0,0 +1,167 @@
+package de.uniluebeck.itm.util.serialization;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Strings;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class MultiClassSerializationWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MultiClassSerializationHelper<Object> helper;
+
+    private List<Object> objects;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        Map<Class<?>, Function<?, byte[]>> serializers = new HashMap<Class<?>, Function<?, byte[]>>();
+        serializers.put(String.class, new Function<String, byte[]>() {
+            @Override
+            public byte[] apply(String string) {
+                return string.getBytes(Charsets.UTF_8);
+            }
+        });
+        serializers.put(BigInteger.class, new Function<BigInteger, byte[]>() {
+            @Override
+            public byte[] apply(BigInteger value) {
+                return value.toByteArray();
+            }
+        });
+        Map<Class<?>, Function<byte[], ?>> deserializers = new HashMap<Class<?>, Function<byte[], ?>>();
+        deserializers.put(String.class, new Function<byte[], String>() {
+            @Override
+            public String apply(byte[] bytes) {
+                return new String(bytes, Charsets.UTF_8);
+            }
+        });
+        deserializers.put(BigInteger.class, new Function<byte[], BigInteger>() {
+            @Override
+            public BigInteger apply(byte[] bytes) {
+                return new BigInteger(bytes);
+            }
+        });
+        helper = new MultiClassSerializationHelper(serializers, deserializers, MultiClassSerializationHelper.buildClassByteMap((Map) serializers, (Map) deserializers));
+
+        // mixes records of which the lengths need one, two and three bytes, and records larger than the writer's buffer
+        objects = new ArrayList<Object>();
+        for (int i = 0; i < 200; i++) {
+            objects.add(BigInteger.valueOf(i));
+            objects.add(Strings.repeat("x", i * 7));
+            if (i % 50 == 0) {
+                objects.add(Strings.repeat("y", 20000 + i));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsAreReadFromStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new MultiClassSerializationWriter<Object>(helper, out, 1024));
+        assertEquals(objects, readAll(new MultiClassSerializationReader<Object>(helper, new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    public void testRecordsAreReadFromChannel() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new MultiClassSerializationWriter<Object>(helper, Channels.newChannel(out), 1024));
+        assertEquals(objects, readAll(new MultiClassSerializationReader<Object>(helper, Channels.newChannel(new ByteArrayInputStream(out.toByteArray())))));
+    }
+
+    @Test
+    public void testRecordsAreReadFromMappedFile() throws Exception {
+        File file = folder.newFile("records");
+        write(new MultiClassSerializationWriter<Object>(helper, new FileOutputStream(file)));
+        assertEquals(objects, readAll(MultiClassSerializationReader.open(helper, file)));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedStreamsAreDetected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new MultiClassSerializationWriter<Object>(helper, out));
+        byte[] bytes = out.toByteArray();
+        readAll(new MultiClassSerializationReader<Object>(helper, new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))));
+    }
+
+    @Test
+    public void testCompressedRecordsAreRead() throws Exception {
+        ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        write(new MultiClassSerializationWriter<Object>(helper, uncompressed, 1024));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        write(new MultiClassSerializationWriter<Object>(helper, compressed, 1024, Deflater.DEFAULT_COMPRESSION, null));
+
+        assertTrue(compressed.size() < uncompressed.size() / 10);
+        assertEquals(objects, readAll(new MultiClassSerializationReader<Object>(helper, new ByteArrayInputStream(compressed.toByteArray()))));
+
+        File file = folder.newFile("records");
+        write(new MultiClassSerializationWriter<Object>(helper, Channels.newChannel(new FileOutputStream(file)), 1024, Deflater.BEST_SPEED, null));
+        assertEquals(objects, readAll(MultiClassSerializationReader.open(helper, file)));
+    }
+
+    @Test
+    public void testDictionaryIsRequiredToReadCompressedRecords() throws Exception {
+        byte[] dictionary = Strings.repeat("x", 256).getBytes(Charsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new MultiClassSerializationWriter<Object>(helper, out, 1024, Deflater.DEFAULT_COMPRESSION, dictionary));
+
+        assertEquals(objects, readAll(new MultiClassSerializationReader<Object>(helper, new ByteArrayInputStream(out.toByteArray()), dictionary)));
+        try {
+            readAll(new MultiClassSerializationReader<Object>(helper, new ByteArrayInputStream(out.toByteArray())));
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            readAll(new MultiClassSerializationReader<Object>(helper, new ByteArrayInputStream(out.toByteArray()), new byte[]{1, 2, 3}));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testVarIntsRoundTrip() throws Exception {
+        byte[] bytes = new byte[VarInts.MAX_SIZE];
+        for (int value : new int[]{0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1}) {
+            assertEquals(VarInts.sizeOf(value), VarInts.write(bytes, 0, value));
+            assertEquals(value, VarInts.read(bytes, 0));
+        }
+    }
+
+    private void write(MultiClassSerializationWriter<Object> writer) throws Exception {
+        for (Object object : objects) {
+            writer.write(object);
+        }
+        writer.close();
+    }
+
+    private static List<Object> readAll(MultiClassSerializationReader<Object> reader) throws Exception {
+        List<Object> read = new ArrayList<Object>();
+        Object object;
+        while ((object = reader.read()) != null) {
+            read.add(object);
+        }
+        reader.close();
+        return read;
+    }
+}
@@ -0,0 +1,144 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+package de.uniluebeck.itm.util;
+
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Parallel bulk operations over a weakly consistent entry iterator. The calling thread walks the iterator and hands
+ * chunks of entries to the executor, so that no snapshot of the whole map is taken. At most {@code parallelism} chunks
+ * are in flight at any time, which also bounds the memory held by chunks.
+ */
+final class BulkOperations {
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private BulkOperations() {
+	}
+
+	static <K, V> void forEach(final Iterator<? extends Map.Entry<K, V>> iterator,
+							   final TimedCacheEntryVisitor<? super K, ? super V> visitor,
+							   final Executor executor, final int parallelism) {
+		checkNotNull(visitor);
+		reduce(iterator, new TimedCacheReducer<K, V, Object>() {
+			@Override
+			public Object transform(final K key, final V value) {
+				visitor.visit(key, value);
+				return null;
+			}
+
+			@Override
+			public Object combine(final Object left, final Object right) {
+				return null;
+			}
+		}, executor, parallelism
+		);
+	}
+
+	static <K, V, R> R reduce(final Iterator<? extends Map.Entry<K, V>> iterator,
+							  final TimedCacheReducer<? super K, ? super V, R> reducer,
+							  final Executor executor, final int parallelism) {
+
+		checkNotNull(reducer);
+		checkNotNull(executor);
+		checkArgument(parallelism > 0, "Parallelism must be positive");
+
+		final Semaphore permits = new Semaphore(parallelism);
+		final Queue<R> partials = new ConcurrentLinkedQueue<R>();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		while (iterator.hasNext() && failure.get() == null) {
+
+			final List<Map.Entry<K, V>> chunk = new ArrayList<Map.Entry<K, V>>(CHUNK_SIZE);
+			while (chunk.size() < CHUNK_SIZE && iterator.hasNext()) {
+				chunk.add(iterator.next());
+			}
+
+			permits.acquireUninterruptibly();
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							final R partial = reduce(chunk, reducer);
+							if (partial != null) {
+								partials.add(partial);
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						} finally {
+							permits.release();
+						}
+					}
+				}
+				);
+			} catch (RuntimeException e) {
+				permits.release();
+				failure.compareAndSet(null, e);
+			}
+		}
+
+		// wait for all chunks in flight
+		permits.acquireUninterruptibly(parallelism);
+		permits.release(parallelism);
+
+		final Throwable t = failure.get();
+		if (t instanceof Error) {
+			throw new ExecutionError((Error) t);
+		} else if (t != null) {
+			throw new UncheckedExecutionException(t);
+		}
+
+		R result = null;
+		for (R partial : partials) {
+			result = result == null ? partial : reducer.combine(result, partial);
+		}
+		return result;
+	}
+
+	private static <K, V, R> R reduce(final List<Map.Entry<K, V>> chunk,
+									  final TimedCacheReducer<? super K, ? super V, R> reducer) {
+		R result = null;
+		for (Map.Entry<K, V> entry : chunk) {
+			final R transformed = reducer.transform(entry.getKey(), entry.getValue());
+			if (transformed != null) {
+				result = result == null ? transformed : reducer.combine(result, transformed);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,649 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util;
+
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A concurrent variant of {@link TimedCache} for caches with many entries that are accessed by many threads.
+ * <p/>
+ * Entries are kept in a {@link ConcurrentHashMap} with lock-striped segments so that reads never block and writes only
+ * contend on the same segment. Expiry is handled by a {@link TimingWheel} instead of scheduling one task per entry on a
+ * {@link java.util.concurrent.ScheduledExecutorService}. As with {@link TimedCache} reading an entry resets its timeout
+ * (see {@link #setTouchMode(TimedCacheTouchMode)}) and a {@link TimedCacheListener} may decide to keep an entry upon its
+ * timeout by returning a new timeout.
+ * <p/>
+ * Entries expire at the first tick of the wheel after their timeout, i.e. up to one tick duration late. Neither keys nor
+ * values may be {@code null}. Views and iterators are weakly consistent and never throw a {@link
+ * java.util.ConcurrentModificationException}.
+ *
+ * @param <K>
+ * 		the type of the keys
+ * @param <V>
+ * 		the type of the values
+ */
+public class ConcurrentTimedCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, Closeable {
+
+	private static final long DEFAULT_TIMEOUT = 30;
+
+	private static final TimeUnit DEFAULT_TIME_UNIT = TimeUnit.SECONDS;
+
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	private final TimingWheel timingWheel;
+
+	private final long defaultTimeout;
+
+	private final TimeUnit defaultTimeUnit;
+
+	private final ConcurrentMap<K, Node<K, V>> map;
+
+	private volatile TimedCacheListener<K, V> listener;
+
+	private volatile TimedCacheTouchMode touchMode = TimedCacheTouchMode.RESCHEDULE;
+
+	private volatile TimedCacheStatsCounter statsCounter;
+
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a {@link ConcurrentTimedCache} instance with a default timeout of 30 seconds that uses the {@linkplain
+	 * TimingWheel#getShared() shared timing wheel}.
+	 */
+	public ConcurrentTimedCache() {
+		this(TimingWheel.getShared(), DEFAULT_TIMEOUT, DEFAULT_TIME_UNIT);
+	}
+
+	public ConcurrentTimedCache(final long defaultTimeout, final TimeUnit defaultTimeUnit) {
+		this(TimingWheel.getShared(), defaultTimeout, defaultTimeUnit);
+	}
+
+	public ConcurrentTimedCache(final TimingWheel timingWheel) {
+		this(timingWheel, DEFAULT_TIMEOUT, DEFAULT_TIME_UNIT);
+	}
+
+	public ConcurrentTimedCache(final TimingWheel timingWheel, final long defaultTimeout,
+								final TimeUnit defaultTimeUnit) {
+		this(timingWheel, defaultTimeout, defaultTimeUnit, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Constructs a {@link ConcurrentTimedCache} instance.
+	 *
+	 * @param timingWheel
+	 * 		the timing wheel used to expire entries, may be shared between multiple caches
+	 * @param defaultTimeout
+	 * 		the timeout used for entries that are added without an explicit timeout
+	 * @param defaultTimeUnit
+	 * 		the time unit of {@code defaultTimeout}
+	 * @param concurrencyLevel
+	 * 		the estimated number of concurrently updating threads, i.e. the number of lock stripes
+	 */
+	public ConcurrentTimedCache(final TimingWheel timingWheel, final long defaultTimeout,
+								final TimeUnit defaultTimeUnit, final int concurrencyLevel) {
+		this.timingWheel = checkNotNull(timingWheel);
+		this.defaultTimeout = defaultTimeout;
+		this.defaultTimeUnit = checkNotNull(defaultTimeUnit);
+		this.map = new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f, concurrencyLevel);
+	}
+
+	/**
+	 * A cache entry. The entry itself is the task that is scheduled on the timing wheel to expire it, so re-arming the
+	 * timeout of an entry does not allocate anything but the wheel's own handle.
+	 */
+	private static final class Node<K, V> implements Runnable {
+
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Node, TimingWheel.Timeout> TIMEOUT_UPDATER =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, TimingWheel.Timeout.class, "timeout");
+
+		private final ConcurrentTimedCache<K, V> cache;
+
+		private final K key;
+
+		private final V value;
+
+		private final long timeoutNanos;
+
+		private final long writeTime;
+
+		private volatile TimingWheel.Timeout timeout;
+
+		private volatile long lastAccess;
+
+		private Node(final ConcurrentTimedCache<K, V> cache, final K key, final V value, final long timeoutNanos) {
+			this.cache = cache;
+			this.key = key;
+			this.value = value;
+			this.timeoutNanos = timeoutNanos;
+			this.writeTime = System.nanoTime();
+			this.lastAccess = writeTime;
+		}
+
+		private void touch() {
+			lastAccess = System.nanoTime();
+			if (cache.touchMode == TimedCacheTouchMode.RESCHEDULE) {
+				arm(timeoutNanos);
+			}
+		}
+
+		private void arm(final long delayNanos) {
+			final TimingWheel.Timeout previous = swapTimeout(
+					cache.timingWheel.schedule(this, delayNanos, TimeUnit.NANOSECONDS)
+			);
+			if (previous != null) {
+				previous.cancel();
+			}
+		}
+
+		private void disarm() {
+			final TimingWheel.Timeout previous = swapTimeout(null);
+			if (previous != null) {
+				previous.cancel();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private TimingWheel.Timeout swapTimeout(final TimingWheel.Timeout newTimeout) {
+			return TIMEOUT_UPDATER.getAndSet(this, newTimeout);
+		}
+
+		@Override
+		public void run() {
+			final long remaining = lastAccess + timeoutNanos - System.nanoTime();
+			if (remaining > 0) {
+				arm(remaining);
+			} else {
+				cache.expire(this);
+			}
+		}
+	}
+
+	private void expire(final Node<K, V> node) {
+
+		// the entry may have been replaced or removed concurrently, in which case it must be left alone
+		if (!map.remove(node.key, node)) {
+			return;
+		}
+
+		final TimedCacheListener<K, V> listener = this.listener;
+		final Tuple<Long, TimeUnit> timeout = listener != null ? listener.timeout(node.key, node.value) : null;
+
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter != null) {
+			if (timeout != null) {
+				statsCounter.recordRearm();
+			} else {
+				statsCounter.recordExpiration();
+			}
+		}
+
+		if (timeout != null) {
+			putIfAbsent(node.key, node.value, timeout.getFirst(), timeout.getSecond());
+		}
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return map.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(final Object value) {
+		checkNotNull(value);
+		for (Node<K, V> node : map.values()) {
+			if (node.value.equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public V get(final Object key) {
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter == null) {
+			return getInternal(key);
+		}
+		final long start = System.nanoTime();
+		final V value = getInternal(key);
+		statsCounter.recordGet(value != null, System.nanoTime() - start);
+		return value;
+	}
+
+	private V getInternal(final Object key) {
+		final Node<K, V> node = map.get(key);
+		if (node == null) {
+			return null;
+		}
+		node.touch();
+		afterHit(node.key, node.value, node.writeTime);
+		return node.value;
+	}
+
+	/**
+	 * Invoked after a read found an entry. Does nothing by default.
+	 *
+	 * @param key
+	 * 		the key of the entry
+	 * @param value
+	 * 		the value of the entry
+	 * @param writeTime
+	 * 		the {@link System#nanoTime()} at which the value was written
+	 */
+	void afterHit(final K key, final V value, final long writeTime) {
+		// hook for LoadingTimedCache
+	}
+
+	/**
+	 * Returns the value for {@code key} without touching the entry or recording statistics.
+	 */
+	V getQuietly(final Object key) {
+		final Node<K, V> node = map.get(key);
+		return node == null ? null : node.value;
+	}
+
+	TimedCacheStatsCounter getStatsCounter() {
+		return statsCounter;
+	}
+
+	/**
+	 * Resets the timeout of the entry for {@code key}, if present.
+	 *
+	 * @param key
+	 * 		the key of the entry
+	 *
+	 * @return {@code true} if an entry was present, {@code false} otherwise
+	 */
+	public boolean touch(final K key) {
+		final Node<K, V> node = map.get(key);
+		if (node == null) {
+			return false;
+		}
+		node.touch();
+		return true;
+	}
+
+	@Override
+	public V put(final K key, final V value) {
+		return put(key, value, defaultTimeout, defaultTimeUnit);
+	}
+
+	public V put(final K key, final V value, final long timeout, final TimeUnit timeUnit) {
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter == null) {
+			return putInternal(key, value, timeout, timeUnit);
+		}
+		final long start = System.nanoTime();
+		final V previous = putInternal(key, value, timeout, timeUnit);
+		statsCounter.recordPut(System.nanoTime() - start);
+		return previous;
+	}
+
+	private V putInternal(final K key, final V value, final long timeout, final TimeUnit timeUnit) {
+
+		final Node<K, V> node = newNode(key, value, timeout, timeUnit);
+		final Node<K, V> previous = map.put(key, node);
+		node.arm(node.timeoutNanos);
+
+		if (previous == null) {
+			return null;
+		}
+		previous.disarm();
+		return previous.value;
+	}
+
+	@Override
+	public V putIfAbsent(final K key, final V value) {
+		return putIfAbsent(key, value, defaultTimeout, defaultTimeUnit);
+	}
+
+	public V putIfAbsent(final K key, final V value, final long timeout, final TimeUnit timeUnit) {
+
+		final Node<K, V> node = newNode(key, value, timeout, timeUnit);
+		final Node<K, V> existing = map.putIfAbsent(key, node);
+
+		if (existing != null) {
+			return existing.value;
+		}
+		node.arm(node.timeoutNanos);
+		return null;
+	}
+
+	@Override
+	public V remove(final Object key) {
+		final Node<K, V> node = map.remove(key);
+		if (node == null) {
+			return null;
+		}
+		node.disarm();
+		recordExplicitRemoval();
+		return node.value;
+	}
+
+	@Override
+	public boolean remove(final Object key, final Object value) {
+		checkNotNull(value);
+		while (true) {
+			final Node<K, V> node = map.get(key);
+			if (node == null || !node.value.equals(value)) {
+				return false;
+			}
+			if (map.remove(key, node)) {
+				node.disarm();
+				recordExplicitRemoval();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the entry for {@code key} only if currently mapped to {@code oldValue}. The new entry keeps the timeout
+	 * duration of the replaced entry.
+	 */
+	@Override
+	public boolean replace(final K key, final V oldValue, final V newValue) {
+		checkNotNull(oldValue);
+		while (true) {
+			final Node<K, V> node = map.get(key);
+			if (node == null || !node.value.equals(oldValue)) {
+				return false;
+			}
+			final Node<K, V> replacement = newNode(key, newValue, node.timeoutNanos, TimeUnit.NANOSECONDS);
+			if (map.replace(key, node, replacement)) {
+				replacement.arm(replacement.timeoutNanos);
+				node.disarm();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the entry for {@code key} only if currently mapped to some value. The new entry keeps the timeout
+	 * duration of the replaced entry.
+	 */
+	@Override
+	public V replace(final K key, final V value) {
+		while (true) {
+			final Node<K, V> node = map.get(key);
+			if (node == null) {
+				return null;
+			}
+			final Node<K, V> replacement = newNode(key, value, node.timeoutNanos, TimeUnit.NANOSECONDS);
+			if (map.replace(key, node, replacement)) {
+				replacement.arm(replacement.timeoutNanos);
+				node.disarm();
+				return node.value;
+			}
+		}
+	}
+
+	@Override
+	public void putAll(final Map<? extends K, ? extends V> m) {
+		for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
+			put(entry.getKey(), entry.getValue(), defaultTimeout, defaultTimeUnit);
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (Node<K, V> node : map.values()) {
+			if (map.remove(node.key, node)) {
+				node.disarm();
+				recordExplicitRemoval();
+			}
+		}
+	}
+
+	/**
+	 * Returns a view of the keys. Removing through the view removes the entry from the cache, cancelling its timeout.
+	 * Iterating does not touch the entries.
+	 */
+	@Override
+	public Set<K> keySet() {
+		return new KeySet();
+	}
+
+	/**
+	 * Returns a view of the entries with the same guarantees as {@link #keySet()}. Setting the value of an entry puts the
+	 * new value into the cache with the default timeout.
+	 */
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	@SuppressWarnings("unused")
+	public Tuple<Long, TimeUnit> getDefaultTimeout() {
+		return new Tuple<Long, TimeUnit>(defaultTimeout, defaultTimeUnit);
+	}
+
+	public void setListener(final TimedCacheListener<K, V> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets how reading an entry resets its timeout. Defaults to {@link TimedCacheTouchMode#RESCHEDULE}.
+	 *
+	 * @param touchMode
+	 * 		the touch mode
+	 */
+	public void setTouchMode(final TimedCacheTouchMode touchMode) {
+		this.touchMode = checkNotNull(touchMode);
+	}
+
+	/**
+	 * Enables recording of hit, miss, put, removal and latency statistics. Recording uses striped counters and adds two
+	 * {@link System#nanoTime()} calls to each get and put. Disabled by default.
+	 */
+	public synchronized void enableStats() {
+		if (statsCounter == null) {
+			statsCounter = new TimedCacheStatsCounter();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the statistics recorded since {@link #enableStats()} was called.
+	 *
+	 * @return a snapshot of the statistics
+	 *
+	 * @throws IllegalStateException
+	 * 		if statistics are not enabled
+	 */
+	public TimedCacheStats getStats() {
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		checkState(statsCounter != null, "Statistics are not enabled");
+		return statsCounter.snapshot(size());
+	}
+
+	private void recordExplicitRemoval() {
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter != null) {
+			statsCounter.recordExplicitRemoval();
+		}
+	}
+
+	/**
+	 * Closes this cache. All entries are discarded without notifying the listener and their timeouts are cancelled, so
+	 * that a closed cache is no longer referenced by the timing wheel. Subsequent puts throw an {@link
+	 * IllegalStateException}. The timing wheel itself is not stopped as it may be shared.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (Node<K, V> node : map.values()) {
+			if (map.remove(node.key, node)) {
+				node.disarm();
+			}
+		}
+	}
+
+	/**
+	 * Iterates over the backing map and removes entries through the cache so that timeouts and statistics are updated.
+	 */
+	private abstract class ViewIterator<T> implements Iterator<T> {
+
+		private final Iterator<Node<K, V>> delegate = map.values().iterator();
+
+		private K lastKey;
+
+		@Override
+		public boolean hasNext() {
+			return delegate.hasNext();
+		}
+
+		@Override
+		public T next() {
+			final Node<K, V> node = delegate.next();
+			lastKey = node.key;
+			return project(node);
+		}
+
+		@Override
+		public void remove() {
+			checkState(lastKey != null);
+			ConcurrentTimedCache.this.remove(lastKey);
+			lastKey = null;
+		}
+
+		abstract T project(Node<K, V> node);
+	}
+
+	private final class KeySet extends AbstractSet<K> {
+
+		@Override
+		public Iterator<K> iterator() {
+			return new ViewIterator<K>() {
+				@Override
+				K project(final Node<K, V> node) {
+					return node.key;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return ConcurrentTimedCache.this.size();
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(final Object o) {
+			return ConcurrentTimedCache.this.remove(o) != null;
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentTimedCache.this.clear();
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			return new ViewIterator<Entry<K, V>>() {
+				@Override
+				Entry<K, V> project(final Node<K, V> node) {
+					return new WriteThroughEntry(node.key, node.value);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return ConcurrentTimedCache.this.size();
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			final Entry<?, ?> entry = (Entry<?, ?>) o;
+			final Node<K, V> node = map.get(entry.getKey());
+			return node != null && node.value.equals(entry.getValue());
+		}
+
+		@Override
+		public boolean remove(final Object o) {
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			final Entry<?, ?> entry = (Entry<?, ?>) o;
+			return entry.getValue() != null && ConcurrentTimedCache.this.remove(entry.getKey(), entry.getValue());
+		}
+
+		@Override
+		public void clear() {
+			ConcurrentTimedCache.this.clear();
+		}
+	}
+
+	private final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+
+		private WriteThroughEntry(final K key, final V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(final V value) {
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+	}
+
+	private Node<K, V> newNode(final K key, final V value, final long timeout, final TimeUnit timeUnit) {
+		checkState(!closed, "The cache is closed");
+		checkNotNull(key);
+		checkNotNull(value);
+		return new Node<K, V>(this, key, value, timeUnit.toNanos(timeout));
+	}
+}
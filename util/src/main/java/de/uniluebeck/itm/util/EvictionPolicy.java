@@ -0,0 +1,69 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util;
+
+/**
+ * Decides which entry a size-bounded {@link TimedCache} evicts when it exceeds its maximum size or weight.
+ * <p/>
+ * The cache reports every insertion, access and removal of a key and asks for victims via {@link #evict()} until it is
+ * within its bounds again. All methods are invoked while holding the lock of the cache, so implementations need not be
+ * thread-safe. An instance must not be shared between multiple caches.
+ *
+ * @param <K> the type of the keys of the cache
+ *
+ * @see de.uniluebeck.itm.util.eviction.LruEvictionPolicy
+ * @see de.uniluebeck.itm.util.eviction.LfuEvictionPolicy
+ * @see de.uniluebeck.itm.util.eviction.WTinyLfuEvictionPolicy
+ */
+public interface EvictionPolicy<K> {
+
+	/**
+	 * Invoked when a new key was added to the cache.
+	 *
+	 * @param key the key
+	 */
+	void recordInsertion(K key);
+
+	/**
+	 * Invoked when the entry for a key was read or its value was replaced.
+	 *
+	 * @param key the key
+	 */
+	void recordAccess(K key);
+
+	/**
+	 * Invoked when a key was removed from the cache for any other reason than being returned by {@link #evict()}.
+	 *
+	 * @param key the key
+	 */
+	void recordRemoval(K key);
+
+	/**
+	 * Selects the next entry to be evicted and stops tracking its key.
+	 *
+	 * @return the key of the entry to evict or {@code null} if no keys are tracked
+	 */
+	K evict();
+
+}
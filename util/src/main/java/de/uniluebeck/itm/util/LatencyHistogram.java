@@ -0,0 +1,144 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A histogram of durations with power-of-two buckets (bucket {@code i} counts durations in [2<sup>i-1</sup>,
+ * 2<sup>i</sup>) nanoseconds). Like {@link StripedCounter} it spreads the counts of different threads over separate
+ * stripes so that recording scales with the number of threads.
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray counts = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+
+	private final StripedCounter totalNanos = new StripedCounter();
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(final long nanos) {
+		final long duration = Math.max(0, nanos);
+		counts.incrementAndGet(StripedCounter.currentStripe() * BUCKETS + bucket(duration));
+		totalNanos.add(duration);
+	}
+
+	public Snapshot snapshot() {
+		final long[] bucketCounts = new long[BUCKETS];
+		for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				bucketCounts[bucket] += counts.get(stripe * BUCKETS + bucket);
+			}
+		}
+		return new Snapshot(bucketCounts, totalNanos.sum());
+	}
+
+	private static int bucket(final long nanos) {
+		return BUCKETS - Long.numberOfLeadingZeros(nanos);
+	}
+
+	/**
+	 * An immutable copy of the counts of a {@link LatencyHistogram}.
+	 */
+	public static class Snapshot {
+
+		private final long[] bucketCounts;
+
+		private final long totalNanos;
+
+		private final long count;
+
+		private Snapshot(final long[] bucketCounts, final long totalNanos) {
+			this.bucketCounts = bucketCounts;
+			this.totalNanos = totalNanos;
+			long count = 0;
+			for (long bucketCount : bucketCounts) {
+				count += bucketCount;
+			}
+			this.count = count;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean(final TimeUnit unit) {
+			return count == 0 ? 0 : (double) totalNanos / count / unit.toNanos(1);
+		}
+
+		/**
+		 * Returns an upper bound for the given percentile, i.e. the upper bound of the bucket the percentile falls into.
+		 *
+		 * @param percentile the percentile in [0, 100]
+		 * @param unit       the time unit of the returned value
+		 *
+		 * @return the upper bound of the percentile
+		 */
+		public long getPercentile(final double percentile, final TimeUnit unit) {
+			checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be in [0, 100]");
+			if (count == 0) {
+				return 0;
+			}
+			final long rank = (long) Math.ceil(percentile / 100 * count);
+			long seen = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				seen += bucketCounts[bucket];
+				if (seen >= rank && seen > 0) {
+					final long upperBoundNanos = bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+					return unit.convert(upperBoundNanos, TimeUnit.NANOSECONDS);
+				}
+			}
+			return unit.convert(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Returns the number of durations per bucket. Bucket {@code i} counts durations in [2<sup>i-1</sup>,
+		 * 2<sup>i</sup>) nanoseconds.
+		 *
+		 * @return a copy of the bucket counts
+		 */
+		public long[] getBucketCounts() {
+			return Arrays.copyOf(bucketCounts, bucketCounts.length);
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot{" +
+					"count=" + count +
+					", meanMicros=" + getMean(TimeUnit.MICROSECONDS) +
+					", p50Micros=" + getPercentile(50, TimeUnit.MICROSECONDS) +
+					", p99Micros=" + getPercentile(99, TimeUnit.MICROSECONDS) +
+					'}';
+		}
+	}
+}
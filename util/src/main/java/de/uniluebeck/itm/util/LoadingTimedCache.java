@@ -0,0 +1,316 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+package de.uniluebeck.itm.util;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheLoader;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@link ConcurrentTimedCache} that loads missing values using a {@link CacheLoader}.
+ * <p/>
+ * Loads are single-flight: if several threads miss on the same key at the same time only one of them invokes the
+ * loader while the others wait for its result, so an expiring hot key does not cause a stampede on the backing store.
+ * <p/>
+ * Optionally values can be refreshed ahead of their expiry (see {@link #setRefreshAfter(long, TimeUnit)}). A read of a
+ * value that was written longer ago than the refresh interval triggers a reload using {@link
+ * CacheLoader#reload(Object, Object)} on the executor passed to the constructor. Until the reload completes the old
+ * value is served, and if the reload fails the old value is kept until it expires. To actually serve stale values
+ * while reloading, pass an executor other than the default same-thread executor.
+ *
+ * @param <K>
+ * 		the type of the keys
+ * @param <V>
+ * 		the type of the values
+ */
+public class LoadingTimedCache<K, V> extends ConcurrentTimedCache<K, V> {
+
+	private final CacheLoader<? super K, V> loader;
+
+	private final Executor executor;
+
+	private final ConcurrentMap<K, SettableFuture<V>> inFlight = new ConcurrentHashMap<K, SettableFuture<V>>();
+
+	private volatile long refreshAfterNanos;
+
+	public LoadingTimedCache(final CacheLoader<? super K, V> loader) {
+		super();
+		this.loader = checkNotNull(loader);
+		this.executor = MoreExecutors.directExecutor();
+	}
+
+	public LoadingTimedCache(final long defaultTimeout, final TimeUnit defaultTimeUnit,
+							 final CacheLoader<? super K, V> loader) {
+		super(defaultTimeout, defaultTimeUnit);
+		this.loader = checkNotNull(loader);
+		this.executor = MoreExecutors.directExecutor();
+	}
+
+	/**
+	 * Constructs a {@link LoadingTimedCache} instance.
+	 *
+	 * @param timingWheel
+	 * 		the timing wheel used to expire entries, may be shared between multiple caches
+	 * @param defaultTimeout
+	 * 		the timeout used for entries that are added without an explicit timeout
+	 * @param defaultTimeUnit
+	 * 		the time unit of {@code defaultTimeout}
+	 * @param loader
+	 * 		the loader used to compute missing values
+	 * @param executor
+	 * 		the executor used for asynchronous loads and refreshes
+	 */
+	public LoadingTimedCache(final TimingWheel timingWheel, final long defaultTimeout,
+							 final TimeUnit defaultTimeUnit, final CacheLoader<? super K, V> loader,
+							 final Executor executor) {
+		super(timingWheel, defaultTimeout, defaultTimeUnit);
+		this.loader = checkNotNull(loader);
+		this.executor = checkNotNull(executor);
+	}
+
+	/**
+	 * Sets the time after which a value is reloaded on its next read. The interval should be shorter than the timeout of
+	 * the entries, otherwise they expire before they are refreshed. A value of zero disables refreshing, which is the
+	 * default.
+	 *
+	 * @param duration
+	 * 		the time since a value was written after which it is refreshed
+	 * @param unit
+	 * 		the unit of {@code duration}
+	 */
+	public void setRefreshAfter(final long duration, final TimeUnit unit) {
+		checkArgument(duration >= 0, "The refresh interval must not be negative");
+		this.refreshAfterNanos = unit.toNanos(duration);
+	}
+
+	/**
+	 * Returns the value for {@code key}, loading it in the calling thread if it is not cached. If another thread is
+	 * already loading the value, waits for that load instead of starting a new one.
+	 *
+	 * @param key
+	 * 		the key
+	 *
+	 * @return the cached or loaded value
+	 *
+	 * @throws ExecutionException
+	 * 		if the loader threw an exception or returned {@code null}
+	 */
+	public V getOrLoad(final K key) throws ExecutionException {
+		final V value = get(key);
+		if (value != null) {
+			return value;
+		}
+		return Uninterruptibles.getUninterruptibly(loadOrJoin(key, loader, MoreExecutors.directExecutor()));
+	}
+
+	/**
+	 * Like {@link #getOrLoad(Object)} but computes a missing value using {@code function} instead of the cache's loader.
+	 * Exceptions thrown by {@code function} are propagated unchanged.
+	 *
+	 * @param key
+	 * 		the key
+	 * @param function
+	 * 		the function computing the value, must not return {@code null}
+	 *
+	 * @return the cached or computed value
+	 */
+	public V getOrCompute(final K key, final Function<? super K, V> function) {
+		final V value = get(key);
+		if (value != null) {
+			return value;
+		}
+		try {
+			return Uninterruptibles.getUninterruptibly(
+					loadOrJoin(key, CacheLoader.from(function), MoreExecutors.directExecutor())
+			);
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns a future for the value of {@code key}. The future is already done if the value is cached, otherwise the
+	 * value is loaded on the cache's executor or an ongoing load of the same key is joined.
+	 *
+	 * @param key
+	 * 		the key
+	 *
+	 * @return a future for the value
+	 */
+	public ListenableFuture<V> getAsync(final K key) {
+		final V value = get(key);
+		if (value != null) {
+			return Futures.immediateFuture(value);
+		}
+		return loadOrJoin(key, loader, executor);
+	}
+
+	/**
+	 * Reloads the value of {@code key} on the cache's executor. While reloading, reads return the current value.
+	 *
+	 * @param key
+	 * 		the key
+	 *
+	 * @return a future for the reloaded value
+	 */
+	public ListenableFuture<V> refresh(final K key) {
+		final V oldValue = getQuietly(key);
+		return oldValue == null ? loadOrJoin(key, loader, executor) : refresh(key, oldValue);
+	}
+
+	@Override
+	void afterHit(final K key, final V value, final long writeTime) {
+		final long refreshAfterNanos = this.refreshAfterNanos;
+		if (refreshAfterNanos > 0 && System.nanoTime() - writeTime >= refreshAfterNanos && !inFlight.containsKey(key)) {
+			refresh(key, value);
+		}
+	}
+
+	private ListenableFuture<V> loadOrJoin(final K key, final CacheLoader<? super K, V> loader,
+										   final Executor executor) {
+
+		final SettableFuture<V> future = SettableFuture.create();
+		final SettableFuture<V> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			return existing;
+		}
+
+		// another load may have completed between the cache miss and the registration of this one
+		final V value = getQuietly(key);
+		if (value != null) {
+			inFlight.remove(key, future);
+			future.set(value);
+			return future;
+		}
+
+		execute(key, future, new Runnable() {
+			@Override
+			public void run() {
+				final long start = System.nanoTime();
+				try {
+					complete(key, future, start, loader.load(key), null);
+				} catch (Throwable t) {
+					fail(key, future, start, t);
+				}
+			}
+		}
+		);
+		return future;
+	}
+
+	private ListenableFuture<V> refresh(final K key, final V oldValue) {
+
+		final SettableFuture<V> future = SettableFuture.create();
+		final SettableFuture<V> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			return existing;
+		}
+
+		execute(key, future, new Runnable() {
+			@Override
+			public void run() {
+				final long start = System.nanoTime();
+				try {
+					Futures.addCallback(loader.reload(key, oldValue), new FutureCallback<V>() {
+						@Override
+						public void onSuccess(final V newValue) {
+							complete(key, future, start, newValue, oldValue);
+						}
+
+						@Override
+						public void onFailure(final Throwable t) {
+							fail(key, future, start, t);
+						}
+					}
+					);
+				} catch (Throwable t) {
+					fail(key, future, start, t);
+				}
+			}
+		}
+		);
+		return future;
+	}
+
+	private void execute(final K key, final SettableFuture<V> future, final Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RuntimeException e) {
+			inFlight.remove(key, future);
+			future.setException(e);
+		}
+	}
+
+	/**
+	 * Stores a loaded value and completes the corresponding future. A refreshed value only replaces {@code oldValue} so
+	 * that entries removed during the reload are not resurrected.
+	 */
+	private void complete(final K key, final SettableFuture<V> future, final long start, final V value,
+						  final V oldValue) {
+
+		if (value == null) {
+			fail(key, future, start, new CacheLoader.InvalidCacheLoadException(
+					"CacheLoader returned null for key " + key + "."
+			)
+			);
+			return;
+		}
+
+		if (oldValue == null) {
+			put(key, value);
+		} else {
+			replace(key, oldValue, value);
+		}
+		recordLoad(true, start);
+		inFlight.remove(key, future);
+		future.set(value);
+	}
+
+	private void fail(final K key, final SettableFuture<V> future, final long start, final Throwable t) {
+		recordLoad(false, start);
+		inFlight.remove(key, future);
+		future.setException(t);
+	}
+
+	private void recordLoad(final boolean success, final long start) {
+		final TimedCacheStatsCounter statsCounter = getStatsCounter();
+		if (statsCounter != null) {
+			statsCounter.recordLoad(success, System.nanoTime() - start);
+		}
+	}
+}
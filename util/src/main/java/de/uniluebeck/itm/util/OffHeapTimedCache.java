@@ -0,0 +1,266 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+package de.uniluebeck.itm.util;
+
+import com.google.common.cache.Weigher;
+import de.uniluebeck.itm.util.eviction.LruEvictionPolicy;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A timed cache for large binary values (e.g. payloads produced by serialization helpers) that keeps the values outside
+ * of the Java heap so that they do not add to garbage collection pauses.
+ * <p/>
+ * Values are copied into chunks of direct memory slabs (see {@link #OffHeapTimedCache(TimingWheel, long, TimeUnit,
+ * long, int)}). Only the keys and a small chunk descriptor per entry are kept on the heap, in a {@link TimedCache} that
+ * handles expiry and bounds the total size of all chunks, evicting the least recently used entries when a put exceeds
+ * the capacity. Chunks of removed entries are reused by later puts of any size.
+ * <p/>
+ * {@link #get(Object)} returns a read-only view of the off-heap memory instead of a copy. A view is only valid as long
+ * as the entry is in the cache: once the entry is removed, replaced, expired or evicted its chunk may be overwritten by
+ * another value. Callers that keep a value beyond that must copy it, e.g. using {@link #getBytes(Object)}.
+ *
+ * @param <K>
+ * 		the type of the keys
+ */
+public class OffHeapTimedCache<K> implements Closeable {
+
+	private static final long DEFAULT_TIMEOUT = 30;
+
+	private static final TimeUnit DEFAULT_TIME_UNIT = TimeUnit.SECONDS;
+
+	private static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+	private final SlabAllocator allocator;
+
+	private final TimedCache<K, SlabAllocator.Chunk> index;
+
+	private volatile boolean closed;
+
+	/**
+	 * Constructs an {@link OffHeapTimedCache} instance with a default timeout of 30 seconds and slabs of 4 MB.
+	 *
+	 * @param capacity
+	 * 		the maximum number of bytes occupied by the values
+	 */
+	public OffHeapTimedCache(final long capacity) {
+		this(TimingWheel.getShared(), DEFAULT_TIMEOUT, DEFAULT_TIME_UNIT, capacity, DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * Constructs an {@link OffHeapTimedCache} instance.
+	 *
+	 * @param timingWheel
+	 * 		the timing wheel used to expire entries, may be shared between multiple caches
+	 * @param defaultTimeout
+	 * 		the timeout used for entries that are added without an explicit timeout
+	 * @param defaultTimeUnit
+	 * 		the time unit of {@code defaultTimeout}
+	 * @param capacity
+	 * 		the maximum number of bytes occupied by the chunks of all entries. Chunk sizes are rounded up to the next power
+	 * 		of two, and freed chunks are retained for reuse, so the allocated direct memory may exceed this value by the
+	 * 		chunks that are free at the moment.
+	 * @param slabSize
+	 * 		the size in bytes of the direct buffers the chunks are allocated from, i.e. the maximum size of a value
+	 */
+	public OffHeapTimedCache(final TimingWheel timingWheel, final long defaultTimeout, final TimeUnit defaultTimeUnit,
+							 final long capacity, final int slabSize) {
+
+		checkArgument(capacity > 0, "Capacity must be positive");
+
+		this.allocator = new SlabAllocator(slabSize);
+		this.index = new TimedCache<K, SlabAllocator.Chunk>(timingWheel, defaultTimeout, defaultTimeUnit);
+		this.index.setListener(new TimedCacheRemovalListener<K, SlabAllocator.Chunk>() {
+			@Override
+			public void removed(final K key, final SlabAllocator.Chunk chunk, final TimedCacheRemovalCause cause) {
+				release(chunk);
+			}
+
+			@Override
+			public Tuple<Long, TimeUnit> timeout(final K key, final SlabAllocator.Chunk chunk) {
+				return null;
+			}
+		}
+		);
+		this.index.setMaximumWeight(capacity, new Weigher<K, SlabAllocator.Chunk>() {
+			@Override
+			public int weigh(final K key, final SlabAllocator.Chunk chunk) {
+				return chunk.getCapacity();
+			}
+		}, new LruEvictionPolicy<K>()
+		);
+	}
+
+	public void put(final K key, final byte[] value) {
+		put(key, ByteBuffer.wrap(value));
+	}
+
+	public void put(final K key, final byte[] value, final long timeout, final TimeUnit timeUnit) {
+		put(key, ByteBuffer.wrap(value), timeout, timeUnit);
+	}
+
+	public void put(final K key, final ByteBuffer value) {
+		final Tuple<Long, TimeUnit> defaultTimeout = index.getDefaultTimeout();
+		put(key, value, defaultTimeout.getFirst(), defaultTimeout.getSecond());
+	}
+
+	/**
+	 * Copies the remaining bytes of {@code value} into off-heap memory and adds them to the cache. The position of {@code
+	 * value} is not changed.
+	 *
+	 * @param key
+	 * 		the key
+	 * @param value
+	 * 		the value
+	 * @param timeout
+	 * 		the timeout of the entry
+	 * @param timeUnit
+	 * 		the time unit of {@code timeout}
+	 *
+	 * @throws IllegalArgumentException
+	 * 		if the value is larger than the slab size
+	 * @throws IllegalStateException
+	 * 		if the cache is closed
+	 */
+	public void put(final K key, final ByteBuffer value, final long timeout, final TimeUnit timeUnit) {
+		checkNotNull(key);
+		checkState(!closed, "The cache is closed");
+		final SlabAllocator.Chunk chunk = allocator.allocate(value.remaining());
+		chunk.write(value);
+		try {
+			index.put(key, chunk, timeout, timeUnit);
+		} catch (RuntimeException e) {
+			allocator.free(chunk);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a read-only view of the value for {@code key}. The view is only valid until the entry is removed from the
+	 * cache, see the class documentation.
+	 *
+	 * @param key
+	 * 		the key
+	 *
+	 * @return a view of the value or {@code null} if there is no entry for {@code key}
+	 */
+	public ByteBuffer get(final Object key) {
+		final SlabAllocator.Chunk chunk = index.get(key);
+		return chunk == null ? null : chunk.view();
+	}
+
+	/**
+	 * Returns a heap copy of the value for {@code key}. Unlike the view returned by {@link #get(Object)}, the copy is
+	 * consistent even if the entry is removed concurrently: the chunk is pinned while copying, so that its memory is
+	 * not reused before the copy is complete.
+	 *
+	 * @param key
+	 * 		the key
+	 *
+	 * @return a copy of the value or {@code null} if there is no entry for {@code key}
+	 */
+	public byte[] getBytes(final Object key) {
+		while (true) {
+			final SlabAllocator.Chunk chunk = index.get(key);
+			if (chunk == null) {
+				return null;
+			}
+			if (!chunk.retain()) {
+				// the entry was removed after the lookup, look up its replacement if any
+				continue;
+			}
+			try {
+				final ByteBuffer view = chunk.view();
+				final byte[] bytes = new byte[view.remaining()];
+				view.get(bytes);
+				return bytes;
+			} finally {
+				release(chunk);
+			}
+		}
+	}
+
+	public boolean containsKey(final Object key) {
+		return index.containsKey(key);
+	}
+
+	public boolean remove(final Object key) {
+		return index.remove(key) != null;
+	}
+
+	public int size() {
+		return index.size();
+	}
+
+	public void clear() {
+		index.clear();
+	}
+
+	/**
+	 * Returns the number of bytes of direct memory allocated for slabs.
+	 */
+	public long getAllocatedBytes() {
+		return allocator.getAllocatedBytes();
+	}
+
+	/**
+	 * Returns the number of bytes occupied by the chunks of all entries.
+	 */
+	public long getUsedBytes() {
+		return index.getTotalWeight();
+	}
+
+	public void setTouchMode(final TimedCacheTouchMode touchMode) {
+		index.setTouchMode(touchMode);
+	}
+
+	public void enableStats() {
+		index.enableStats();
+	}
+
+	public TimedCacheStats getStats() {
+		return index.getStats();
+	}
+
+	private void release(final SlabAllocator.Chunk chunk) {
+		if (chunk.release()) {
+			allocator.free(chunk);
+		}
+	}
+
+	/**
+	 * Closes this cache and drops all slabs. Views returned before must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		index.close();
+		allocator.release();
+	}
+}
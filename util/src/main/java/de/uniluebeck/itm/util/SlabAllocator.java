@@ -0,0 +1,239 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+package de.uniluebeck.itm.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Allocates power-of-two sized chunks from direct {@link ByteBuffer} slabs for {@link OffHeapTimedCache}, using a buddy
+ * scheme: an allocation takes the smallest free chunk that is large enough and splits off the unused halves, and a freed
+ * chunk is merged with its free buddy into a chunk of the next larger size class. That way memory freed by values of one
+ * size is reused for values of any other size, and the allocated slabs are bounded by the peak of the live chunks (plus
+ * fragmentation) even if the value sizes shift over time. Slabs are allocated on demand and only released as a whole by
+ * {@link #release()}.
+ */
+final class SlabAllocator {
+
+	static final int MIN_CHUNK_SIZE = 64;
+
+	private static final int MIN_CHUNK_SHIFT = Integer.numberOfTrailingZeros(MIN_CHUNK_SIZE);
+
+	/**
+	 * A chunk of a slab. The chunk is owned by exactly one cache entry, which holds the initial reference. Readers pin
+	 * the chunk by {@link #retain() retaining} another reference while they copy from it, and the chunk is returned to
+	 * the allocator once the last reference has been {@link #release() released}. Freed memory is handed out again as a
+	 * new instance, so a reader holding a stale instance can never retain a reused chunk.
+	 */
+	static final class Chunk {
+
+		private final ByteBuffer slab;
+
+		private final long address;
+
+		private final int offset;
+
+		private final int sizeClass;
+
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		private int length;
+
+		private Chunk(final ByteBuffer slab, final long address, final int offset, final int sizeClass) {
+			this.slab = slab;
+			this.address = address;
+			this.offset = offset;
+			this.sizeClass = sizeClass;
+		}
+
+		/**
+		 * Adds a reference unless the chunk has already been released by all its holders.
+		 *
+		 * @return {@code true} if a reference was added, {@code false} if the chunk must no longer be read
+		 */
+		boolean retain() {
+			while (true) {
+				final int current = references.get();
+				if (current == 0) {
+					return false;
+				}
+				if (references.compareAndSet(current, current + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Removes a reference.
+		 *
+		 * @return {@code true} if this was the last reference, in which case the caller must free the chunk
+		 */
+		boolean release() {
+			return references.decrementAndGet() == 0;
+		}
+
+		int getCapacity() {
+			return MIN_CHUNK_SIZE << sizeClass;
+		}
+
+		int getLength() {
+			return length;
+		}
+
+		/**
+		 * Returns a read-only view of the bytes stored in this chunk.
+		 */
+		ByteBuffer view() {
+			final ByteBuffer view = slab.duplicate();
+			view.position(offset);
+			view.limit(offset + length);
+			return view.slice().asReadOnlyBuffer();
+		}
+
+		/**
+		 * Copies the remaining bytes of {@code src} into this chunk without changing the position of {@code src}.
+		 */
+		void write(final ByteBuffer src) {
+			final ByteBuffer target = slab.duplicate();
+			target.position(offset);
+			target.put(src.duplicate());
+			length = src.remaining();
+		}
+	}
+
+	private final int slabSize;
+
+	private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+
+	/**
+	 * The addresses of the free chunks per size class, where the address of a chunk is the index of its slab times the
+	 * slab size plus its offset. Lower addresses are handed out first to keep the free memory in few large chunks.
+	 */
+	private final TreeSet<Long>[] freeChunks;
+
+	private boolean released;
+
+	/**
+	 * @param slabSize
+	 * 		the size of each slab in bytes, will be rounded up to the next power of two and is also the maximum chunk size
+	 */
+	SlabAllocator(final int slabSize) {
+		checkArgument(slabSize >= MIN_CHUNK_SIZE && slabSize <= 1 << 30,
+				"Slab size must be in [%s, 2^30]", MIN_CHUNK_SIZE
+		);
+		this.slabSize = Integer.highestOneBit(slabSize - 1) << 1;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		final TreeSet<Long>[] freeChunks = new TreeSet[sizeClassOf(this.slabSize) + 1];
+		this.freeChunks = freeChunks;
+		for (int i = 0; i < freeChunks.length; i++) {
+			freeChunks[i] = new TreeSet<Long>();
+		}
+	}
+
+	int getSlabSize() {
+		return slabSize;
+	}
+
+	synchronized long getAllocatedBytes() {
+		return (long) slabs.size() * slabSize;
+	}
+
+	/**
+	 * Allocates a chunk of at least {@code length} bytes.
+	 *
+	 * @throws IllegalStateException
+	 * 		if the allocator has been {@link #release() released}
+	 */
+	synchronized Chunk allocate(final int length) {
+		checkArgument(length <= slabSize, "Values must not be larger than the slab size of %s bytes", slabSize);
+		checkState(!released, "The allocator has been released");
+
+		final int sizeClass = sizeClassOf(length);
+		int freeClass = sizeClass;
+		while (freeClass < freeChunks.length && freeChunks[freeClass].isEmpty()) {
+			freeClass++;
+		}
+
+		final long address;
+		if (freeClass < freeChunks.length) {
+			address = freeChunks[freeClass].pollFirst();
+		} else {
+			address = (long) slabs.size() * slabSize;
+			slabs.add(ByteBuffer.allocateDirect(slabSize));
+			freeClass = freeChunks.length - 1;
+		}
+
+		// return the upper halves of a larger chunk to the free chunks of the smaller size classes
+		while (freeClass > sizeClass) {
+			freeClass--;
+			freeChunks[freeClass].add(address + (MIN_CHUNK_SIZE << freeClass));
+		}
+
+		return new Chunk(slabs.get((int) (address / slabSize)), address, (int) (address % slabSize), sizeClass);
+	}
+
+	/**
+	 * Returns the memory of {@code chunk} for reuse. The chunk instance itself must not be used afterwards.
+	 */
+	synchronized void free(final Chunk chunk) {
+		if (released) {
+			return;
+		}
+		long address = chunk.address;
+		int sizeClass = chunk.sizeClass;
+		// merge with the free buddy as long as there is one, the buddy of a chunk differs only in the bit of its size
+		while (sizeClass < freeChunks.length - 1) {
+			final long buddy = address ^ (MIN_CHUNK_SIZE << sizeClass);
+			if (!freeChunks[sizeClass].remove(buddy)) {
+				break;
+			}
+			address = Math.min(address, buddy);
+			sizeClass++;
+		}
+		freeChunks[sizeClass].add(address);
+	}
+
+	/**
+	 * Drops all slabs and free chunks. Chunks handed out before must not be used afterwards, and later allocations fail.
+	 */
+	synchronized void release() {
+		for (TreeSet<Long> addresses : freeChunks) {
+			addresses.clear();
+		}
+		slabs.clear();
+		released = true;
+	}
+
+	private static int sizeClassOf(final int length) {
+		if (length <= MIN_CHUNK_SIZE) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_CHUNK_SHIFT;
+	}
+}
@@ -23,18 +23,28 @@
 
 package de.uniluebeck.itm.util;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.cache.Weigher;
 
+import java.io.Closeable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-public class TimedCache<K, V> implements Map<K, V> {
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+public class TimedCache<K, V> implements Map<K, V>, Closeable {
 
 	private static final long DEFAULT_TIMEOUT = 30;
 
@@ -42,29 +52,46 @@ public class TimedCache<K, V> implements Map<K, V> {
 
 	private final ScheduledExecutorService scheduler;
 
+	private final TimingWheel timingWheel;
+
 	private final long defaultTimeout;
 
 	private final TimeUnit defaultTimeUnit;
 
-	private TimedCacheListener<K, V> listener;
+	private volatile TimedCacheListener<K, V> listener;
+
+	private volatile TimedCacheTouchMode touchMode = TimedCacheTouchMode.RESCHEDULE;
+
+	private EvictionPolicy<K> evictionPolicy;
+
+	private Weigher<? super K, ? super V> weigher;
+
+	private long maximumWeight = Long.MAX_VALUE;
+
+	private long totalWeight;
+
+	private volatile TimedCacheStatsCounter statsCounter;
+
+	private volatile boolean closed;
 
 	/**
 	 * Constructs a {@link TimedCache} instance with a default timeout of 30 minutes.
 	 */
 	public TimedCache() {
-		this(Executors.newSingleThreadScheduledExecutor(
-						new ThreadFactoryBuilder().setNameFormat("TimedCache-Thread %d").build()
-				),
-				DEFAULT_TIMEOUT, DEFAULT_TIME_UNIT
-		);
+		this(TimingWheel.getShared(), DEFAULT_TIMEOUT, DEFAULT_TIME_UNIT);
 	}
 
+	/**
+	 * Constructs a {@link TimedCache} instance whose entries are expired by the {@linkplain TimingWheel#getShared()
+	 * shared timing wheel}, so that no thread is started per cache.
+	 *
+	 * @param defaultTimeout
+	 * 		the timeout used for entries that are added without an explicit timeout
+	 * @param defaultTimeUnit
+	 * 		the time unit of {@code defaultTimeout}
+	 */
 	public TimedCache(int defaultTimeout, TimeUnit defaultTimeUnit) {
-		this(Executors.newSingleThreadScheduledExecutor(
-						new ThreadFactoryBuilder().setNameFormat("TimedCache-Thread %d").build()
-				),
-				defaultTimeout, defaultTimeUnit
-		);
+		this(TimingWheel.getShared(), defaultTimeout, defaultTimeUnit);
 	}
 
 	public TimedCache(ScheduledExecutorService scheduler) {
@@ -72,117 +99,312 @@ public class TimedCache<K, V> implements Map<K, V> {
 	}
 
 	public TimedCache(ScheduledExecutorService scheduler, long defaultTimeout, TimeUnit defaultTimeUnit) {
-		this.scheduler = scheduler;
+		this.scheduler = checkNotNull(scheduler);
+		this.timingWheel = null;
 		this.defaultTimeout = defaultTimeout;
 		this.defaultTimeUnit = defaultTimeUnit;
 	}
 
-	private class RemoveRunnable<K2> implements Runnable {
+	public TimedCache(TimingWheel timingWheel) {
+		this(timingWheel, DEFAULT_TIMEOUT, DEFAULT_TIME_UNIT);
+	}
 
-		private K2 key;
+	public TimedCache(TimingWheel timingWheel, long defaultTimeout, TimeUnit defaultTimeUnit) {
+		this.scheduler = null;
+		this.timingWheel = checkNotNull(timingWheel);
+		this.defaultTimeout = defaultTimeout;
+		this.defaultTimeUnit = defaultTimeUnit;
+	}
 
-		private RemoveRunnable(K2 key) {
+	/**
+	 * Expiry bookkeeping for one cache entry. The instance is also the task that is scheduled to remove the entry, so
+	 * re-scheduling does not allocate a new task.
+	 */
+	private class Expiry implements Runnable {
+
+		private final K key;
+
+		private final long timeoutNanos;
+
+		private int weight;
+
+		private long lastAccess;
+
+		private ScheduledFuture<?> future;
+
+		private TimingWheel.Timeout timeout;
+
+		private Expiry(final K key, final long timeoutNanos, final int weight) {
 			this.key = key;
+			this.timeoutNanos = timeoutNanos;
+			this.weight = weight;
+			this.lastAccess = System.nanoTime();
+		}
+
+		private void schedule(final long delayNanos) {
+			if (timingWheel != null) {
+				timeout = timingWheel.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+			} else {
+				future = scheduler.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		private void cancel() {
+			if (timeout != null) {
+				timeout.cancel();
+			} else {
+				future.cancel(false);
+			}
+		}
+
+		private void touch() {
+			lastAccess = System.nanoTime();
+			if (touchMode == TimedCacheTouchMode.RESCHEDULE) {
+				cancel();
+				schedule(timeoutNanos);
+			}
 		}
 
 		@Override
-		@SuppressWarnings("unchecked")
 		public void run() {
 
-			V value = TimedCache.this.remove(key);
+			final V value;
 
-			if (listener != null && value != null) {
-				Tuple<Long, TimeUnit> timeout = listener.timeout((K) key, value);
-				if (timeout != null) {
-					put((K) key, value, timeout.getFirst(), timeout.getSecond());
+			synchronized (TimedCache.this) {
+
+				// the entry may have been replaced or removed in the meantime
+				if (cleanupMap.get(key) != this) {
+					return;
+				}
+
+				final long remaining = lastAccess + timeoutNanos - System.nanoTime();
+				if (remaining > 0) {
+					schedule(remaining);
+					return;
 				}
+
+				value = removeInternal(key, null);
 			}
 
-		}
+			final TimedCacheListener<K, V> listener = TimedCache.this.listener;
+			final Tuple<Long, TimeUnit> timeout = listener != null && value != null ?
+					listener.timeout(key, value) :
+					null;
 
+			final TimedCacheStatsCounter statsCounter = TimedCache.this.statsCounter;
+			if (timeout != null) {
+				if (statsCounter != null) {
+					statsCounter.recordRearm();
+				}
+				if (!closed) {
+					putInternal(key, value, timeout.getFirst(), timeout.getSecond());
+				}
+			} else {
+				if (statsCounter != null) {
+					statsCounter.recordExpiration();
+				}
+				notifyRemoval(key, value, TimedCacheRemovalCause.EXPIRED);
+			}
+		}
 	}
 
-	private Map<K, Tuple<Long, ScheduledFuture<Void>>> cleanupMap =
-			new HashMap<K, Tuple<Long, ScheduledFuture<Void>>>();
+	private Map<K, Expiry> cleanupMap = new HashMap<K, Expiry>();
 
-	private Map<K, V> map = new HashMap<K, V>();
+	/**
+	 * The values, only modified while holding the lock but readable without it.
+	 */
+	private Map<K, V> map = new ConcurrentHashMap<K, V>();
 
-	public synchronized int size() {
+	public int size() {
 		return map.size();
 	}
 
-	public synchronized boolean isEmpty() {
+	public boolean isEmpty() {
 		return map.isEmpty();
 	}
 
-	public synchronized boolean containsKey(Object key) {
+	public boolean containsKey(Object key) {
 		return map.containsKey(key);
 	}
 
-	public synchronized boolean containsValue(Object value) {
+	public boolean containsValue(Object value) {
 		return map.containsValue(value);
 	}
 
-	@SuppressWarnings("unchecked")
-	public synchronized V get(Object key) {
+	public V get(Object key) {
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter == null) {
+			return getInternal(key);
+		}
+		final long start = System.nanoTime();
+		final V v = getInternal(key);
+		statsCounter.recordGet(v != null, System.nanoTime() - start);
+		return v;
+	}
+
+	private synchronized V getInternal(Object key) {
 		final V v = map.get(key);
 		// "touch" entry
 		if (v != null) {
-			touch((K) key);
+			//noinspection SuspiciousMethodCalls
+			final Expiry expiry = cleanupMap.get(key);
+			expiry.touch();
+			if (evictionPolicy != null) {
+				evictionPolicy.recordAccess(expiry.key);
+			}
 		}
 		return v;
 	}
 
-	public boolean touch(final K k) {
-		final V v = map.get(k);
-		if (v != null) {
-			put(k, v, cleanupMap.get(k).getFirst(), TimeUnit.MILLISECONDS);
+	public synchronized boolean touch(final K k) {
+		final Expiry expiry = cleanupMap.get(k);
+		if (expiry != null) {
+			expiry.touch();
+			if (evictionPolicy != null) {
+				evictionPolicy.recordAccess(k);
+			}
 			return true;
 		}
 		return false;
 	}
 
-	public synchronized V put(K key, V value) {
+	public V put(K key, V value) {
 		return put(key, value, defaultTimeout, defaultTimeUnit);
 	}
 
-	@SuppressWarnings("unchecked")
-	public synchronized V put(K key, V value, long timeout, TimeUnit timeUnit) {
+	public V put(K key, V value, long timeout, TimeUnit timeUnit) {
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter == null) {
+			return putInternal(key, value, timeout, timeUnit);
+		}
+		final long start = System.nanoTime();
+		final V v = putInternal(key, value, timeout, timeUnit);
+		statsCounter.recordPut(System.nanoTime() - start);
+		return v;
+	}
+
+	/**
+	 * Puts an entry that times out after {@code timeout} but expires for the first time after {@code firstTimeout}, as if
+	 * it had last been accessed {@code timeout - firstTimeout} ago. Used to restore entries from a snapshot.
+	 */
+	V put(K key, V value, long timeout, long firstTimeout, TimeUnit timeUnit) {
+		checkArgument(firstTimeout <= timeout, "The first timeout must not exceed the timeout");
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter == null) {
+			return putInternal(key, value, timeUnit.toNanos(timeout), timeUnit.toNanos(firstTimeout));
+		}
+		final long start = System.nanoTime();
+		final V v = putInternal(key, value, timeUnit.toNanos(timeout), timeUnit.toNanos(firstTimeout));
+		statsCounter.recordPut(System.nanoTime() - start);
+		return v;
+	}
+
+	private V putInternal(K key, V value, long timeout, TimeUnit timeUnit) {
+		final long timeoutNanos = timeUnit.toNanos(timeout);
+		return putInternal(key, value, timeoutNanos, timeoutNanos);
+	}
+
+	private synchronized V putInternal(K key, V value, long timeoutNanos, long firstTimeoutNanos) {
+
+		checkState(!closed, "The cache is closed");
+		checkNotNull(key);
+		checkNotNull(value);
 
 		V v = map.put(key, value);
 
-		if (v != null) {
-			cleanupMap.remove(key).getSecond().cancel(false);
+		final Expiry expiry = new Expiry(key, timeoutNanos, weigh(key, value));
+		expiry.lastAccess -= timeoutNanos - firstTimeoutNanos;
+		expiry.schedule(firstTimeoutNanos);
+		totalWeight += expiry.weight;
+
+		final Expiry previous = cleanupMap.put(key, expiry);
+		if (previous != null) {
+			previous.cancel();
+			totalWeight -= previous.weight;
+			if (evictionPolicy != null) {
+				evictionPolicy.recordAccess(key);
+			}
+			notifyRemoval(key, v, TimedCacheRemovalCause.REPLACED);
+		} else if (evictionPolicy != null) {
+			evictionPolicy.recordInsertion(key);
 		}
 
-		final long timeoutMillis = timeUnit.toMicros(timeout);
-		cleanupMap.put(
-				key,
-				new Tuple<Long, ScheduledFuture<Void>>(
-						timeoutMillis,
-						(ScheduledFuture<Void>) scheduler.schedule(new RemoveRunnable<K>(key), timeout, timeUnit)
-				)
-		);
+		evictIfNecessary();
 
 		return v;
 
 	}
 
-	@SuppressWarnings("unchecked")
 	public synchronized V remove(Object key) {
+		return removeInternal(key, TimedCacheRemovalCause.EXPLICIT);
+	}
 
-		V value = map.remove(key);
+	/**
+	 * Removes the entry for {@code key} and notifies the removal listener if {@code cause} is not {@code null}. Must be
+	 * called while holding the lock.
+	 */
+	private V removeInternal(final Object key, final TimedCacheRemovalCause cause) {
 
-		if (value != null) {
-			//noinspection SuspiciousMethodCalls
-			cleanupMap.get(key).getSecond().cancel(false);
+		//noinspection SuspiciousMethodCalls
+		final Expiry expiry = cleanupMap.remove(key);
+		if (expiry == null) {
+			return null;
+		}
+
+		final V value = map.remove(key);
+
+		expiry.cancel();
+		totalWeight -= expiry.weight;
+		if (evictionPolicy != null && cause != TimedCacheRemovalCause.SIZE) {
+			evictionPolicy.recordRemoval(expiry.key);
+		}
+
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		if (statsCounter != null) {
+			if (cause == TimedCacheRemovalCause.EXPLICIT) {
+				statsCounter.recordExplicitRemoval();
+			} else if (cause == TimedCacheRemovalCause.SIZE) {
+				statsCounter.recordEviction();
+			}
 		}
 
-		cleanupMap.remove(key);
+		if (cause != null) {
+			notifyRemoval(expiry.key, value, cause);
+		}
 
 		return value;
 	}
 
+	private void evictIfNecessary() {
+		if (evictionPolicy == null) {
+			return;
+		}
+		while (totalWeight > maximumWeight) {
+			final K victim = evictionPolicy.evict();
+			if (victim == null) {
+				return;
+			}
+			removeInternal(victim, TimedCacheRemovalCause.SIZE);
+		}
+	}
+
+	private int weigh(final K key, final V value) {
+		if (weigher == null) {
+			return 1;
+		}
+		final int weight = weigher.weigh(key, value);
+		checkArgument(weight >= 0, "Weigher returned a negative weight for key %s", key);
+		return weight;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void notifyRemoval(final K key, final V value, final TimedCacheRemovalCause cause) {
+		final TimedCacheListener<K, V> listener = this.listener;
+		if (listener instanceof TimedCacheRemovalListener) {
+			((TimedCacheRemovalListener<K, V>) listener).removed(key, value, cause);
+		}
+	}
+
 	public synchronized void putAll(Map<? extends K, ? extends V> m) {
 		for (Entry<? extends K, ? extends V> entry : m.entrySet()) {
 			put(entry.getKey(), entry.getValue(), defaultTimeout, defaultTimeUnit);
@@ -190,11 +412,38 @@ public class TimedCache<K, V> implements Map<K, V> {
 	}
 
 	public synchronized void clear() {
-		for (Tuple<Long, ScheduledFuture<Void>> future : cleanupMap.values()) {
-			future.getSecond().cancel(false);
+		for (Expiry expiry : cleanupMap.values()) {
+			expiry.cancel();
+			if (evictionPolicy != null) {
+				evictionPolicy.recordRemoval(expiry.key);
+			}
+			if (statsCounter != null) {
+				statsCounter.recordExplicitRemoval();
+			}
+			notifyRemoval(expiry.key, map.get(expiry.key), TimedCacheRemovalCause.EXPLICIT);
 		}
 		cleanupMap.clear();
 		map.clear();
+		totalWeight = 0;
+	}
+
+	/**
+	 * Closes this cache. All entries are discarded without notifying the listener and their timers are released, so
+	 * that a closed cache does not keep any references on the scheduler or timing wheel. Subsequent puts throw an {@link
+	 * IllegalStateException}. The scheduler or timing wheel itself is not shut down as it may be shared.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (Expiry expiry : cleanupMap.values()) {
+			expiry.cancel();
+		}
+		cleanupMap.clear();
+		map.clear();
+		totalWeight = 0;
 	}
 
 	@SuppressWarnings("unused")
@@ -202,16 +451,217 @@ public class TimedCache<K, V> implements Map<K, V> {
 		return new Tuple<Long, TimeUnit>(defaultTimeout, defaultTimeUnit);
 	}
 
-	public synchronized Set<K> keySet() {
-		return map.keySet();
+	/**
+	 * Returns a view of the keys. The view and its iterators are weakly consistent, i.e. they never throw a {@link
+	 * java.util.ConcurrentModificationException} and reflect the state of the cache at some point at or since their
+	 * creation. Removing through the view removes the entry from the cache. Iterating does not touch the entries.
+	 */
+	public Set<K> keySet() {
+		return new KeySet();
+	}
+
+	/**
+	 * Returns a view of the values with the same guarantees as {@link #keySet()}.
+	 */
+	public Collection<V> values() {
+		return new Values();
+	}
+
+	/**
+	 * Returns a view of the entries with the same guarantees as {@link #keySet()}. Setting the value of an entry puts the
+	 * new value into the cache with the default timeout.
+	 */
+	public Set<Entry<K, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	/**
+	 * Invokes {@code visitor} for every entry in parallel. The entries are visited in chunks on {@code executor} with at
+	 * most {@code parallelism} chunks in flight. Like iteration, visiting is weakly consistent and does not touch the
+	 * entries. Returns after all entries have been visited.
+	 *
+	 * @param visitor
+	 * 		the visitor, invoked concurrently from multiple threads
+	 * @param executor
+	 * 		the executor on which the entries are visited
+	 * @param parallelism
+	 * 		the maximum number of chunks processed concurrently
+	 *
+	 * @throws com.google.common.util.concurrent.UncheckedExecutionException
+	 * 		if the visitor threw an exception, in which case some entries may not have been visited
+	 */
+	public void forEach(final TimedCacheEntryVisitor<? super K, ? super V> visitor, final Executor executor,
+						final int parallelism) {
+		BulkOperations.forEach(map.entrySet().iterator(), visitor, executor, parallelism);
+	}
+
+	/**
+	 * Transforms every entry and combines the results in parallel, see {@link #forEach(TimedCacheEntryVisitor,
+	 * Executor, int)}.
+	 *
+	 * @param reducer
+	 * 		the reducer, invoked concurrently from multiple threads
+	 * @param executor
+	 * 		the executor on which the entries are reduced
+	 * @param parallelism
+	 * 		the maximum number of chunks processed concurrently
+	 * @param <R>
+	 * 		the type of the result
+	 *
+	 * @return the combined result or {@code null} if the cache is empty or all entries were transformed to {@code null}
+	 *
+	 * @throws com.google.common.util.concurrent.UncheckedExecutionException
+	 * 		if the reducer threw an exception
+	 */
+	public <R> R reduce(final TimedCacheReducer<? super K, ? super V, R> reducer, final Executor executor,
+						final int parallelism) {
+		return BulkOperations.reduce(map.entrySet().iterator(), reducer, executor, parallelism);
+	}
+
+	/**
+	 * Iterates over the backing map and removes entries through the cache so that timers, weights and listeners are
+	 * updated.
+	 */
+	private abstract class ViewIterator<T> implements Iterator<T> {
+
+		private final Iterator<Entry<K, V>> delegate = map.entrySet().iterator();
+
+		private K lastKey;
+
+		@Override
+		public boolean hasNext() {
+			return delegate.hasNext();
+		}
+
+		@Override
+		public T next() {
+			final Entry<K, V> entry = delegate.next();
+			lastKey = entry.getKey();
+			return project(entry);
+		}
+
+		@Override
+		public void remove() {
+			checkState(lastKey != null);
+			TimedCache.this.remove(lastKey);
+			lastKey = null;
+		}
+
+		abstract T project(Entry<K, V> entry);
+	}
+
+	private final class KeySet extends AbstractSet<K> {
+
+		@Override
+		public Iterator<K> iterator() {
+			return new ViewIterator<K>() {
+				@Override
+				K project(final Entry<K, V> entry) {
+					return entry.getKey();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return TimedCache.this.size();
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(final Object o) {
+			return TimedCache.this.remove(o) != null;
+		}
+
+		@Override
+		public void clear() {
+			TimedCache.this.clear();
+		}
+	}
+
+	private final class Values extends AbstractCollection<V> {
+
+		@Override
+		public Iterator<V> iterator() {
+			return new ViewIterator<V>() {
+				@Override
+				V project(final Entry<K, V> entry) {
+					return entry.getValue();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return TimedCache.this.size();
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			return containsValue(o);
+		}
+
+		@Override
+		public void clear() {
+			TimedCache.this.clear();
+		}
 	}
 
-	public synchronized Collection<V> values() {
-		return map.values();
+	private final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+		@Override
+		public Iterator<Entry<K, V>> iterator() {
+			return new ViewIterator<Entry<K, V>>() {
+				@Override
+				Entry<K, V> project(final Entry<K, V> entry) {
+					return new WriteThroughEntry(entry.getKey(), entry.getValue());
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return TimedCache.this.size();
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			final Entry<?, ?> entry = (Entry<?, ?>) o;
+			final V value = map.get(entry.getKey());
+			return value != null && value.equals(entry.getValue());
+		}
+
+		@Override
+		public boolean remove(final Object o) {
+			synchronized (TimedCache.this) {
+				return contains(o) && TimedCache.this.remove(((Entry<?, ?>) o).getKey()) != null;
+			}
+		}
+
+		@Override
+		public void clear() {
+			TimedCache.this.clear();
+		}
 	}
 
-	public synchronized Set<Entry<K, V>> entrySet() {
-		return map.entrySet();
+	private final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+
+		private WriteThroughEntry(final K key, final V value) {
+			super(key, value);
+		}
+
+		@Override
+		public V setValue(final V value) {
+			put(getKey(), value);
+			return super.setValue(value);
+		}
 	}
 
 	@Override
@@ -229,12 +679,125 @@ public class TimedCache<K, V> implements Map<K, V> {
 
 	}
 
-	public synchronized int hashCode() {
+	public int hashCode() {
 		return map.hashCode();
 	}
 
+	/**
+	 * Sets the listener that is asked for a new timeout when an entry times out. If the listener is a {@link
+	 * TimedCacheRemovalListener} it is additionally notified about all removals.
+	 *
+	 * @param listener
+	 * 		the listener or {@code null}
+	 */
 	public void setListener(TimedCacheListener<K, V> listener) {
 		this.listener = listener;
 	}
 
+	/**
+	 * Enables recording of hit, miss, put, removal and latency statistics. Recording uses striped counters and adds two
+	 * {@link System#nanoTime()} calls to each get and put. Disabled by default.
+	 */
+	public synchronized void enableStats() {
+		if (statsCounter == null) {
+			statsCounter = new TimedCacheStatsCounter();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the statistics recorded since {@link #enableStats()} was called.
+	 *
+	 * @return a snapshot of the statistics
+	 *
+	 * @throws IllegalStateException
+	 * 		if statistics are not enabled
+	 */
+	public TimedCacheStats getStats() {
+		final TimedCacheStatsCounter statsCounter = this.statsCounter;
+		checkState(statsCounter != null, "Statistics are not enabled");
+		return statsCounter.snapshot(size());
+	}
+
+	/**
+	 * Bounds the number of entries in this cache. If a put exceeds the bound, entries chosen by {@code evictionPolicy} are
+	 * evicted and reported with {@link TimedCacheRemovalCause#SIZE}.
+	 *
+	 * @param maximumSize
+	 * 		the maximum number of entries
+	 * @param evictionPolicy
+	 * 		the policy that selects the entries to evict, must not be shared with other caches
+	 */
+	public void setMaximumSize(final long maximumSize, final EvictionPolicy<K> evictionPolicy) {
+		setMaximumWeight(maximumSize, null, evictionPolicy);
+	}
+
+	/**
+	 * Bounds the total weight of the entries in this cache. If a put exceeds the bound, entries chosen by {@code
+	 * evictionPolicy} are evicted and reported with {@link TimedCacheRemovalCause#SIZE}.
+	 *
+	 * @param maximumWeight
+	 * 		the maximum total weight of all entries
+	 * @param weigher
+	 * 		computes the weight of an entry, {@code null} to weigh every entry with 1
+	 * @param evictionPolicy
+	 * 		the policy that selects the entries to evict, must not be shared with other caches
+	 */
+	public synchronized void setMaximumWeight(final long maximumWeight, final Weigher<? super K, ? super V> weigher,
+											  final EvictionPolicy<K> evictionPolicy) {
+
+		checkArgument(maximumWeight >= 0, "Maximum weight must not be negative");
+		checkNotNull(evictionPolicy);
+
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+		this.evictionPolicy = evictionPolicy;
+
+		// existing entries are re-weighed and handed to the new policy
+		totalWeight = 0;
+		for (Expiry expiry : cleanupMap.values()) {
+			expiry.weight = weigh(expiry.key, map.get(expiry.key));
+			totalWeight += expiry.weight;
+			evictionPolicy.recordInsertion(expiry.key);
+		}
+
+		evictIfNecessary();
+	}
+
+	/**
+	 * Returns the total weight of all entries as computed by the weigher passed to {@link #setMaximumWeight(long,
+	 * Weigher, EvictionPolicy)}.
+	 */
+	synchronized long getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Returns the time in nanoseconds until the entry for {@code key} times out, or a negative value if there is no entry
+	 * or it is about to time out.
+	 */
+	synchronized long getRemainingNanos(final Object key) {
+		//noinspection SuspiciousMethodCalls
+		final Expiry expiry = cleanupMap.get(key);
+		return expiry == null ? -1 : expiry.lastAccess + expiry.timeoutNanos - System.nanoTime();
+	}
+
+	/**
+	 * Returns the timeout in nanoseconds the entry for {@code key} was put with, or a negative value if there is no entry.
+	 */
+	synchronized long getTimeoutNanos(final Object key) {
+		//noinspection SuspiciousMethodCalls
+		final Expiry expiry = cleanupMap.get(key);
+		return expiry == null ? -1 : expiry.timeoutNanos;
+	}
+
+	/**
+	 * Sets how reading an entry resets its timeout. Defaults to {@link TimedCacheTouchMode#RESCHEDULE}.
+	 *
+	 * @param touchMode
+	 * 		the touch mode
+	 */
+	public void setTouchMode(final TimedCacheTouchMode touchMode) {
+		this.touchMode = checkNotNull(touchMode);
+	}
+
 }
@@ -0,0 +1,226 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+package de.uniluebeck.itm.util;
+
+import com.google.common.base.Function;
+import com.google.common.io.Files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes the entries of a {@link TimedCache} together with their remaining timeouts to a file and loads them back, e.g.
+ * to warm up a cache after a restart.
+ * <p/>
+ * Keys and values are encoded by caller supplied functions (e.g. wrapping a {@code MultiClassSerializationHelper}). The
+ * file is written sequentially in a simple binary format:
+ * <pre>
+ * int     magic number
+ * byte    format version
+ * long    write time in milliseconds since the epoch
+ * entries, each consisting of
+ *   byte  1
+ *   long  timeout in milliseconds the entry was put with
+ *   long  remaining timeout in milliseconds
+ *   int   key length, followed by the key bytes
+ *   int   value length, followed by the value bytes
+ * byte    0
+ * </pre>
+ * When loading, the time that passed since the snapshot was written is subtracted from the remaining timeouts and
+ * entries that would have timed out in the meantime are skipped. Loaded entries keep their original timeout, the
+ * remaining timeout only applies until they first expire.
+ */
+public final class TimedCacheSnapshots {
+
+	private static final int MAGIC = 0x54435348;
+
+	private static final byte VERSION = 2;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private TimedCacheSnapshots() {
+	}
+
+	/**
+	 * Writes a snapshot of {@code cache} to {@code file}. The snapshot is weakly consistent, i.e. entries added or removed
+	 * while writing may or may not be contained. The file is replaced atomically where the file system supports it, so
+	 * that a failed write does not destroy a previous snapshot.
+	 *
+	 * @param cache
+	 * 		the cache
+	 * @param file
+	 * 		the file to write to
+	 * @param keyEncoder
+	 * 		encodes keys
+	 * @param valueEncoder
+	 * 		encodes values
+	 *
+	 * @return the number of entries written
+	 *
+	 * @throws IOException
+	 * 		if writing fails
+	 */
+	public static <K, V> int write(final TimedCache<K, V> cache, final File file,
+								   final Function<? super K, byte[]> keyEncoder,
+								   final Function<? super V, byte[]> valueEncoder) throws IOException {
+
+		checkNotNull(cache);
+		checkNotNull(keyEncoder);
+		checkNotNull(valueEncoder);
+
+		// a unique temp file in the target directory, so that concurrent writers of the same snapshot do not share it and
+		// the final move stays on the same file system
+		final File tempFile = File.createTempFile("." + file.getName() + "-", ".tmp", file.getAbsoluteFile().getParentFile());
+		final DataOutputStream out;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+		} catch (IOException e) {
+			//noinspection ResultOfMethodCallIgnored
+			tempFile.delete();
+			throw e;
+		}
+
+		int count = 0;
+		boolean written = false;
+		try {
+
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(System.currentTimeMillis());
+
+			for (Map.Entry<K, V> entry : cache.entrySet()) {
+
+				final long timeoutNanos = cache.getTimeoutNanos(entry.getKey());
+				final long remainingNanos = cache.getRemainingNanos(entry.getKey());
+				if (timeoutNanos < 0 || remainingNanos <= 0) {
+					continue;
+				}
+
+				out.writeByte(1);
+				out.writeLong(TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+				out.writeLong(TimeUnit.NANOSECONDS.toMillis(Math.min(remainingNanos, timeoutNanos)));
+				writeBytes(out, keyEncoder.apply(entry.getKey()));
+				writeBytes(out, valueEncoder.apply(entry.getValue()));
+				count++;
+			}
+
+			out.writeByte(0);
+			written = true;
+
+		} finally {
+			out.close();
+			if (!written) {
+				//noinspection ResultOfMethodCallIgnored
+				tempFile.delete();
+			}
+		}
+
+		Files.move(tempFile, file);
+		return count;
+	}
+
+	/**
+	 * Loads a snapshot written by {@link #write(TimedCache, File, Function, Function)} into {@code cache}. Loaded entries
+	 * replace existing entries with the same key.
+	 *
+	 * @param cache
+	 * 		the cache
+	 * @param file
+	 * 		the file to read from
+	 * @param keyDecoder
+	 * 		decodes keys
+	 * @param valueDecoder
+	 * 		decodes values
+	 *
+	 * @return the number of entries loaded
+	 *
+	 * @throws IOException
+	 * 		if reading fails or the file is not a snapshot
+	 */
+	public static <K, V> int read(final TimedCache<K, V> cache, final File file,
+								  final Function<byte[], ? extends K> keyDecoder,
+								  final Function<byte[], ? extends V> valueDecoder) throws IOException {
+
+		checkNotNull(cache);
+		checkNotNull(keyDecoder);
+		checkNotNull(valueDecoder);
+
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		try {
+
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a TimedCache snapshot");
+			}
+			final byte version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported TimedCache snapshot version " + version + " in " + file);
+			}
+			final long elapsedMillis = Math.max(0, System.currentTimeMillis() - in.readLong());
+
+			int count = 0;
+			while (in.readByte() != 0) {
+
+				final long timeoutMillis = in.readLong();
+				final long remainingMillis = in.readLong() - elapsedMillis;
+				final byte[] key = readBytes(in);
+				final byte[] value = readBytes(in);
+
+				if (remainingMillis > 0) {
+					cache.put(keyDecoder.apply(key), valueDecoder.apply(value), timeoutMillis,
+							Math.min(remainingMillis, timeoutMillis), TimeUnit.MILLISECONDS
+					);
+					count++;
+				}
+			}
+			return count;
+
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Corrupt TimedCache snapshot: negative length " + length);
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,207 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable snapshot of the statistics of a {@link TimedCache} or {@link ConcurrentTimedCache}, covering the time
+ * since statistics were enabled.
+ */
+public class TimedCacheStats {
+
+	private final long elapsedNanos;
+
+	private final long entryCount;
+
+	private final long hitCount;
+
+	private final long missCount;
+
+	private final long putCount;
+
+	private final long loadSuccessCount;
+
+	private final long loadFailureCount;
+
+	private final long expirationCount;
+
+	private final long rearmCount;
+
+	private final long explicitRemovalCount;
+
+	private final long evictionCount;
+
+	private final LatencyHistogram.Snapshot getLatency;
+
+	private final LatencyHistogram.Snapshot putLatency;
+
+	private final LatencyHistogram.Snapshot loadLatency;
+
+	public TimedCacheStats(final long elapsedNanos, final long entryCount, final long hitCount, final long missCount,
+						   final long putCount, final long loadSuccessCount, final long loadFailureCount,
+						   final long expirationCount, final long rearmCount, final long explicitRemovalCount,
+						   final long evictionCount, final LatencyHistogram.Snapshot getLatency,
+						   final LatencyHistogram.Snapshot putLatency, final LatencyHistogram.Snapshot loadLatency) {
+		this.elapsedNanos = elapsedNanos;
+		this.entryCount = entryCount;
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.putCount = putCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.expirationCount = expirationCount;
+		this.rearmCount = rearmCount;
+		this.explicitRemovalCount = explicitRemovalCount;
+		this.evictionCount = evictionCount;
+		this.getLatency = getLatency;
+		this.putLatency = putLatency;
+		this.loadLatency = loadLatency;
+	}
+
+	/**
+	 * Returns the time that passed between enabling statistics and taking this snapshot.
+	 */
+	public long getElapsed(final TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the number of entries in the cache at the time the snapshot was taken.
+	 */
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/**
+	 * Returns the ratio of reads that found an entry, or 1.0 if there were no reads at all.
+	 */
+	public double getHitRate() {
+		final long requestCount = getRequestCount();
+		return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+	}
+
+	public long getPutCount() {
+		return putCount;
+	}
+
+	/**
+	 * Returns the average number of puts per second.
+	 */
+	public double getPutRate() {
+		return perSecond(putCount);
+	}
+
+	/**
+	 * Returns the number of values successfully loaded by a {@link LoadingTimedCache}, including refreshes.
+	 */
+	public long getLoadSuccessCount() {
+		return loadSuccessCount;
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	/**
+	 * Returns the average number of loads (successful or not) per second.
+	 */
+	public double getLoadRate() {
+		return perSecond(loadSuccessCount + loadFailureCount);
+	}
+
+	/**
+	 * Returns the number of entries that timed out and were removed.
+	 */
+	public long getExpirationCount() {
+		return expirationCount;
+	}
+
+	/**
+	 * Returns the number of entries that timed out but were kept because the {@link TimedCacheListener} returned a new
+	 * timeout.
+	 */
+	public long getRearmCount() {
+		return rearmCount;
+	}
+
+	public long getExplicitRemovalCount() {
+		return explicitRemovalCount;
+	}
+
+	/**
+	 * Returns the number of entries that were evicted because the cache exceeded its maximum size or weight.
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public LatencyHistogram.Snapshot getGetLatency() {
+		return getLatency;
+	}
+
+	public LatencyHistogram.Snapshot getPutLatency() {
+		return putLatency;
+	}
+
+	public LatencyHistogram.Snapshot getLoadLatency() {
+		return loadLatency;
+	}
+
+	private double perSecond(final long count) {
+		return elapsedNanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "TimedCacheStats{" +
+				"elapsedMillis=" + getElapsed(TimeUnit.MILLISECONDS) +
+				", entryCount=" + entryCount +
+				", hitCount=" + hitCount +
+				", missCount=" + missCount +
+				", putCount=" + putCount +
+				", loadSuccessCount=" + loadSuccessCount +
+				", loadFailureCount=" + loadFailureCount +
+				", expirationCount=" + expirationCount +
+				", rearmCount=" + rearmCount +
+				", explicitRemovalCount=" + explicitRemovalCount +
+				", evictionCount=" + evictionCount +
+				", getLatency=" + getLatency +
+				", putLatency=" + putLatency +
+				", loadLatency=" + loadLatency +
+				'}';
+	}
+}
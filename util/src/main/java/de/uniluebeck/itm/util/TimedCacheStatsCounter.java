@@ -0,0 +1,122 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util;
+
+/**
+ * Records the statistics of a {@link TimedCache} or {@link ConcurrentTimedCache}. All counters are striped so recording
+ * from many threads does not contend.
+ */
+public class TimedCacheStatsCounter {
+
+	private final long startTime = System.nanoTime();
+
+	private final StripedCounter hitCount = new StripedCounter();
+
+	private final StripedCounter missCount = new StripedCounter();
+
+	private final StripedCounter putCount = new StripedCounter();
+
+	private final StripedCounter loadSuccessCount = new StripedCounter();
+
+	private final StripedCounter loadFailureCount = new StripedCounter();
+
+	private final StripedCounter expirationCount = new StripedCounter();
+
+	private final StripedCounter rearmCount = new StripedCounter();
+
+	private final StripedCounter explicitRemovalCount = new StripedCounter();
+
+	private final StripedCounter evictionCount = new StripedCounter();
+
+	private final LatencyHistogram getLatency = new LatencyHistogram();
+
+	private final LatencyHistogram putLatency = new LatencyHistogram();
+
+	private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+	public void recordGet(final boolean hit, final long nanos) {
+		if (hit) {
+			hitCount.increment();
+		} else {
+			missCount.increment();
+		}
+		getLatency.record(nanos);
+	}
+
+	public void recordPut(final long nanos) {
+		putCount.increment();
+		putLatency.record(nanos);
+	}
+
+	public void recordLoad(final boolean success, final long nanos) {
+		if (success) {
+			loadSuccessCount.increment();
+		} else {
+			loadFailureCount.increment();
+		}
+		loadLatency.record(nanos);
+	}
+
+	public void recordExpiration() {
+		expirationCount.increment();
+	}
+
+	public void recordRearm() {
+		rearmCount.increment();
+	}
+
+	public void recordExplicitRemoval() {
+		explicitRemovalCount.increment();
+	}
+
+	public void recordEviction() {
+		evictionCount.increment();
+	}
+
+	/**
+	 * Returns a snapshot of the counters.
+	 *
+	 * @param entryCount the current number of entries in the cache
+	 *
+	 * @return the snapshot
+	 */
+	public TimedCacheStats snapshot(final long entryCount) {
+		return new TimedCacheStats(
+				System.nanoTime() - startTime,
+				entryCount,
+				hitCount.sum(),
+				missCount.sum(),
+				putCount.sum(),
+				loadSuccessCount.sum(),
+				loadFailureCount.sum(),
+				expirationCount.sum(),
+				rearmCount.sum(),
+				explicitRemovalCount.sum(),
+				evictionCount.sum(),
+				getLatency.snapshot(),
+				putLatency.snapshot(),
+				loadLatency.snapshot()
+		);
+	}
+}
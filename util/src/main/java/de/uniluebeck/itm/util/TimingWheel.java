@@ -0,0 +1,485 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A hashed timing wheel for scheduling large numbers of short, mostly cancelled timeouts (e.g. cache entry expiry).
+ * <p/>
+ * Timeouts are hashed into a fixed number of buckets by their deadline. Scheduling and cancelling only enqueue into
+ * lock-free queues, so both are O(1) and never contend on a shared heap as {@link java.util.concurrent.DelayQueue}
+ * based schedulers do. All bucket bookkeeping and the execution of expired tasks happen on the thread running the
+ * periodic tick, which is driven by a {@link ScheduledExecutorService}. Timeouts whose deadline lies more than one wheel
+ * revolution in the future stay in their bucket for the according number of rounds.
+ * <p/>
+ * The price for this is precision: tasks are executed at the first tick after their deadline, i.e. up to one tick
+ * duration late. Unless the wheel is given an executor for expired tasks, tasks should be short and must not block, as
+ * they delay all other timeouts.
+ * <p/>
+ * A single wheel can serve any number of caches. {@link #getShared()} returns a process-wide instance that is used by
+ * the default constructors of {@link TimedCache} and {@link ConcurrentTimedCache}.
+ */
+public class TimingWheel {
+
+	private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+	private static final long DEFAULT_TICK_DURATION = 100;
+
+	private static final TimeUnit DEFAULT_TICK_UNIT = TimeUnit.MILLISECONDS;
+
+	private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	/**
+	 * The maximum number of expired tasks handed to the expiry executor as one batch.
+	 */
+	private static final int EXPIRY_BATCH_SIZE = 1024;
+
+	private final ScheduledExecutorService ticker;
+
+	private final boolean ownsTicker;
+
+	private final long tickNanos;
+
+	private final Bucket[] buckets;
+
+	private final int mask;
+
+	private final long startTime;
+
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+	private final ScheduledFuture<?> tickFuture;
+
+	private final Executor expiryExecutor;
+
+	private final boolean shared;
+
+	/**
+	 * The next tick to be processed. Only accessed by the tick task.
+	 */
+	private long tick;
+
+	/**
+	 * Constructs a {@link TimingWheel} with a tick duration of 100 milliseconds and 512 buckets that is driven by its
+	 * own daemon thread.
+	 */
+	public TimingWheel() {
+		this(DEFAULT_TICK_DURATION, DEFAULT_TICK_UNIT, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * Constructs a {@link TimingWheel} that is driven by its own daemon thread.
+	 *
+	 * @param tickDuration
+	 * 		the duration between two ticks, i.e. the precision of the wheel
+	 * @param tickUnit
+	 * 		the time unit of {@code tickDuration}
+	 * @param ticksPerWheel
+	 * 		the number of buckets of the wheel, will be rounded up to the next power of two
+	 */
+	public TimingWheel(final long tickDuration, final TimeUnit tickUnit, final int ticksPerWheel) {
+		this(
+				Executors.newSingleThreadScheduledExecutor(
+						new ThreadFactoryBuilder().setNameFormat("TimingWheel-Thread %d").setDaemon(true).build()
+				),
+				true, tickDuration, tickUnit, ticksPerWheel
+		);
+	}
+
+	/**
+	 * Constructs a {@link TimingWheel} with a tick duration of 100 milliseconds and 512 buckets that is driven by the
+	 * given {@code ticker}.
+	 *
+	 * @param ticker
+	 * 		the scheduler on which the wheel ticks and expired tasks are executed
+	 */
+	public TimingWheel(final ScheduledExecutorService ticker) {
+		this(ticker, DEFAULT_TICK_DURATION, DEFAULT_TICK_UNIT, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * Constructs a {@link TimingWheel} that is driven by the given {@code ticker}.
+	 *
+	 * @param ticker
+	 * 		the scheduler on which the wheel ticks and expired tasks are executed
+	 * @param tickDuration
+	 * 		the duration between two ticks, i.e. the precision of the wheel
+	 * @param tickUnit
+	 * 		the time unit of {@code tickDuration}
+	 * @param ticksPerWheel
+	 * 		the number of buckets of the wheel, will be rounded up to the next power of two
+	 */
+	public TimingWheel(final ScheduledExecutorService ticker, final long tickDuration, final TimeUnit tickUnit,
+					   final int ticksPerWheel) {
+		this(ticker, false, tickDuration, tickUnit, ticksPerWheel, null, false);
+	}
+
+	/**
+	 * Constructs a {@link TimingWheel} that is driven by the given {@code ticker} and executes expired tasks on {@code
+	 * expiryExecutor}. The tasks that expire at one tick are handed to the executor in batches, so that slow tasks (e.g.
+	 * cache listeners) do not delay the tick.
+	 *
+	 * @param ticker
+	 * 		the scheduler on which the wheel ticks
+	 * @param tickDuration
+	 * 		the duration between two ticks, i.e. the precision of the wheel
+	 * @param tickUnit
+	 * 		the time unit of {@code tickDuration}
+	 * @param ticksPerWheel
+	 * 		the number of buckets of the wheel, will be rounded up to the next power of two
+	 * @param expiryExecutor
+	 * 		the executor on which expired tasks are executed
+	 */
+	public TimingWheel(final ScheduledExecutorService ticker, final long tickDuration, final TimeUnit tickUnit,
+					   final int ticksPerWheel, final Executor expiryExecutor) {
+		this(ticker, false, tickDuration, tickUnit, ticksPerWheel, checkNotNull(expiryExecutor), false);
+	}
+
+	private TimingWheel(final ScheduledExecutorService ticker, final boolean ownsTicker, final long tickDuration,
+						final TimeUnit tickUnit, final int ticksPerWheel) {
+		this(ticker, ownsTicker, tickDuration, tickUnit, ticksPerWheel, null, false);
+	}
+
+	private TimingWheel(final ScheduledExecutorService ticker, final boolean ownsTicker, final long tickDuration,
+						final TimeUnit tickUnit, final int ticksPerWheel, final Executor expiryExecutor,
+						final boolean shared) {
+
+		checkNotNull(ticker);
+		checkArgument(tickDuration > 0, "Tick duration must be positive");
+		checkArgument(ticksPerWheel > 0 && ticksPerWheel <= 1 << 30, "Ticks per wheel must be in (0, 2^30]");
+
+		int normalizedTicksPerWheel = 1;
+		while (normalizedTicksPerWheel < ticksPerWheel) {
+			normalizedTicksPerWheel <<= 1;
+		}
+
+		this.ticker = ticker;
+		this.ownsTicker = ownsTicker;
+		this.expiryExecutor = expiryExecutor;
+		this.shared = shared;
+		this.tickNanos = tickUnit.toNanos(tickDuration);
+		this.buckets = new Bucket[normalizedTicksPerWheel];
+		this.mask = normalizedTicksPerWheel - 1;
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new Bucket();
+		}
+
+		this.startTime = System.nanoTime();
+		this.tickFuture = ticker.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					processTicks();
+				} catch (Throwable t) {
+					// an exception would silently suppress all subsequent ticks
+					log.error("Exception while processing timing wheel tick: " + t, t);
+				}
+			}
+		}, tickNanos, tickNanos, TimeUnit.NANOSECONDS
+		);
+	}
+
+	/**
+	 * Returns the process-wide wheel. It ticks every 100 milliseconds on a single daemon thread and executes expired
+	 * tasks on a pool of daemon worker threads, one per available processor. The wheel is created on first use and
+	 * cannot be stopped.
+	 *
+	 * @return the shared wheel
+	 */
+	public static TimingWheel getShared() {
+		return SharedHolder.INSTANCE;
+	}
+
+	private static final class SharedHolder {
+
+		private static final TimingWheel INSTANCE = createShared();
+
+		private static TimingWheel createShared() {
+
+			final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setNameFormat("TimingWheel-Shared-Thread %d").setDaemon(true).build()
+			);
+
+			final int workers = Runtime.getRuntime().availableProcessors();
+			final ExecutorService expiryExecutor = Executors.newFixedThreadPool(
+					workers,
+					new ThreadFactoryBuilder().setNameFormat("TimingWheel-Worker-Thread %d").setDaemon(true).build()
+			);
+
+			return new TimingWheel(
+					ticker, true, DEFAULT_TICK_DURATION, DEFAULT_TICK_UNIT, DEFAULT_TICKS_PER_WHEEL, expiryExecutor, true
+			);
+		}
+	}
+
+	/**
+	 * Schedules {@code task} for execution after the given delay. The task is executed at the first tick after the delay
+	 * has passed, either on the tick thread or on the wheel's expiry executor.
+	 *
+	 * @param task
+	 * 		the task to execute
+	 * @param delay
+	 * 		the delay after which to execute the task
+	 * @param unit
+	 * 		the time unit of {@code delay}
+	 *
+	 * @return a handle that can be used to cancel the task
+	 */
+	public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		checkNotNull(task);
+		long deadline = System.nanoTime() - startTime + unit.toNanos(delay);
+		if (delay > 0 && deadline < 0) {
+			// guard against overflow for very long delays
+			deadline = Long.MAX_VALUE;
+		}
+		final Timeout timeout = new Timeout(this, task, deadline);
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stops ticking. Tasks that have not yet been executed will never be executed. If the wheel was constructed without
+	 * a {@link ScheduledExecutorService} its thread is shut down.
+	 *
+	 * @throws IllegalStateException
+	 * 		if called on the {@linkplain #getShared() shared} wheel
+	 */
+	public void stop() {
+		checkState(!shared, "The shared timing wheel cannot be stopped");
+		tickFuture.cancel(false);
+		if (ownsTicker) {
+			ticker.shutdown();
+		}
+	}
+
+	private void processTicks() {
+		final long now = System.nanoTime() - startTime;
+		final List<Timeout> expired = new ArrayList<Timeout>();
+		while ((tick + 1) * tickNanos <= now) {
+			removeCancelledTimeouts();
+			transferPendingTimeouts();
+			buckets[(int) (tick & mask)].expireTimeouts(expired);
+			tick++;
+		}
+		if (expired.isEmpty()) {
+			return;
+		}
+		if (expiryExecutor == null) {
+			runTasks(expired);
+			return;
+		}
+		for (int from = 0; from < expired.size(); from += EXPIRY_BATCH_SIZE) {
+			final List<Timeout> batch = expired.subList(from, Math.min(expired.size(), from + EXPIRY_BATCH_SIZE));
+			try {
+				expiryExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						runTasks(batch);
+					}
+				}
+				);
+			} catch (RuntimeException e) {
+				log.warn("Expiry executor rejected {} expired tasks, running them on the tick thread", batch.size());
+				runTasks(batch);
+			}
+		}
+	}
+
+	private static void runTasks(final List<Timeout> timeouts) {
+		for (Timeout timeout : timeouts) {
+			timeout.runTask();
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private void transferPendingTimeouts() {
+		Timeout timeout;
+		while ((timeout = pendingTimeouts.poll()) != null) {
+			if (timeout.isCancelled()) {
+				continue;
+			}
+			final long calculated = timeout.deadline / tickNanos;
+			timeout.remainingRounds = (calculated - tick) / buckets.length;
+			buckets[(int) (Math.max(calculated, tick) & mask)].add(timeout);
+		}
+	}
+
+	/**
+	 * A handle for a task scheduled on a {@link TimingWheel}.
+	 */
+	public static final class Timeout {
+
+		private static final int ST_INIT = 0;
+
+		private static final int ST_CANCELLED = 1;
+
+		private static final int ST_EXPIRED = 2;
+
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final TimingWheel wheel;
+
+		private final Runnable task;
+
+		private final long deadline;
+
+		private volatile int state = ST_INIT;
+
+		// the following fields are only accessed by the tick task
+
+		private long remainingRounds;
+
+		private Timeout next;
+
+		private Timeout prev;
+
+		private Bucket bucket;
+
+		private Timeout(final TimingWheel wheel, final Runnable task, final long deadline) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the task if it has not been executed yet.
+		 *
+		 * @return {@code true} if the task was cancelled, {@code false} if it was executed or cancelled before
+		 */
+		public boolean cancel() {
+			if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			wheel.cancelledTimeouts.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state == ST_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state == ST_EXPIRED;
+		}
+
+		private boolean expire() {
+			return STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED);
+		}
+
+		private void runTask() {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.error("Exception while executing timed out task " + task + ": " + t, t);
+			}
+		}
+	}
+
+	/**
+	 * A doubly linked list of the timeouts hashed into one slot of the wheel. Only accessed by the tick task.
+	 */
+	private static final class Bucket {
+
+		private Timeout head;
+
+		private Timeout tail;
+
+		private void add(final Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private void remove(final Timeout timeout) {
+			if (timeout.prev != null) {
+				timeout.prev.next = timeout.next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = timeout.next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		private void expireTimeouts(final List<Timeout> expired) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				final Timeout next = timeout.next;
+				if (timeout.isCancelled()) {
+					remove(timeout);
+				} else if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					if (timeout.expire()) {
+						expired.add(timeout);
+					}
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util.eviction;
+
+import de.uniluebeck.itm.util.EvictionPolicy;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts the least frequently used entry, breaking ties by evicting the entry that reached its frequency first.
+ * Frequencies are counted exactly and never decay, so entries that were popular once may stay in the cache for a long
+ * time. Use {@link WTinyLfuEvictionPolicy} if the popularity of keys changes over time.
+ *
+ * @param <K> the type of the keys of the cache
+ */
+public class LfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	private final Map<K, Integer> frequencies = new HashMap<K, Integer>();
+
+	private final TreeMap<Integer, LinkedHashSet<K>> buckets = new TreeMap<Integer, LinkedHashSet<K>>();
+
+	@Override
+	public void recordInsertion(final K key) {
+		frequencies.put(key, 1);
+		bucket(1).add(key);
+	}
+
+	@Override
+	public void recordAccess(final K key) {
+		final Integer frequency = frequencies.get(key);
+		if (frequency == null) {
+			return;
+		}
+		removeFromBucket(key, frequency);
+		frequencies.put(key, frequency + 1);
+		bucket(frequency + 1).add(key);
+	}
+
+	@Override
+	public void recordRemoval(final K key) {
+		final Integer frequency = frequencies.remove(key);
+		if (frequency != null) {
+			removeFromBucket(key, frequency);
+		}
+	}
+
+	@Override
+	public K evict() {
+		if (buckets.isEmpty()) {
+			return null;
+		}
+		final Map.Entry<Integer, LinkedHashSet<K>> lowest = buckets.firstEntry();
+		final Iterator<K> iterator = lowest.getValue().iterator();
+		final K key = iterator.next();
+		iterator.remove();
+		if (lowest.getValue().isEmpty()) {
+			buckets.remove(lowest.getKey());
+		}
+		frequencies.remove(key);
+		return key;
+	}
+
+	private LinkedHashSet<K> bucket(final int frequency) {
+		LinkedHashSet<K> bucket = buckets.get(frequency);
+		if (bucket == null) {
+			bucket = new LinkedHashSet<K>();
+			buckets.put(frequency, bucket);
+		}
+		return bucket;
+	}
+
+	private void removeFromBucket(final K key, final int frequency) {
+		final LinkedHashSet<K> bucket = buckets.get(frequency);
+		bucket.remove(key);
+		if (bucket.isEmpty()) {
+			buckets.remove(frequency);
+		}
+	}
+}
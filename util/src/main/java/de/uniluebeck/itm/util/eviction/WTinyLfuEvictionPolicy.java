@@ -0,0 +1,240 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or promote*
+ *   products derived from this software without specific prior written permission.                                   *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.util.eviction;
+
+import de.uniluebeck.itm.util.EvictionPolicy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An eviction policy following the Window TinyLFU scheme that combines recency and frequency and is resistant to scans.
+ * <p/>
+ * New keys enter a small LRU window (1% of the maximum size). Keys falling out of the window are moved to the probation
+ * segment of the main space, keys that are accessed again while on probation are promoted to the protected segment (80%
+ * of the main space). When an entry has to be evicted, the key that most recently entered probation competes with the
+ * least recently used key on probation: the one that was accessed less frequently according to a {@link
+ * FrequencySketch} is evicted. One-hit wonders therefore don't push frequently used entries out of the cache.
+ *
+ * @param <K> the type of the keys of the cache
+ */
+public class WTinyLfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+	private static final int WINDOW = 0;
+
+	private static final int PROBATION = 1;
+
+	private static final int PROTECTED = 2;
+
+	private final FrequencySketch<K> sketch;
+
+	private final Map<K, Node<K>> nodes = new HashMap<K, Node<K>>();
+
+	private final AccessOrderList<K> window = new AccessOrderList<K>();
+
+	private final AccessOrderList<K> probation = new AccessOrderList<K>();
+
+	private final AccessOrderList<K> protectedSegment = new AccessOrderList<K>();
+
+	private final long maximumWindowSize;
+
+	private final long maximumProtectedSize;
+
+	/**
+	 * Constructs the policy.
+	 *
+	 * @param maximumSize the maximum (or, for weighted caches, the expected) number of entries in the cache
+	 */
+	public WTinyLfuEvictionPolicy(final long maximumSize) {
+		checkArgument(maximumSize > 0, "Maximum size must be positive");
+		this.sketch = new FrequencySketch<K>(maximumSize);
+		this.maximumWindowSize = Math.max(1, maximumSize / 100);
+		this.maximumProtectedSize = Math.max(1, (maximumSize - maximumWindowSize) * 8 / 10);
+	}
+
+	@Override
+	public void recordInsertion(final K key) {
+
+		sketch.increment(key);
+
+		final Node<K> node = new Node<K>(key);
+		nodes.put(key, node);
+		window.addLast(node, WINDOW);
+
+		if (window.size > maximumWindowSize) {
+			final Node<K> candidate = window.first();
+			window.remove(candidate);
+			probation.addLast(candidate, PROBATION);
+		}
+	}
+
+	@Override
+	public void recordAccess(final K key) {
+
+		sketch.increment(key);
+
+		final Node<K> node = nodes.get(key);
+		if (node == null) {
+			return;
+		}
+
+		switch (node.segment) {
+			case WINDOW:
+				window.moveToLast(node);
+				break;
+			case PROBATION:
+				probation.remove(node);
+				protectedSegment.addLast(node, PROTECTED);
+				if (protectedSegment.size > maximumProtectedSize) {
+					final Node<K> demoted = protectedSegment.first();
+					protectedSegment.remove(demoted);
+					probation.addLast(demoted, PROBATION);
+				}
+				break;
+			default:
+				protectedSegment.moveToLast(node);
+				break;
+		}
+	}
+
+	@Override
+	public void recordRemoval(final K key) {
+		final Node<K> node = nodes.remove(key);
+		if (node != null) {
+			segment(node).remove(node);
+		}
+	}
+
+	@Override
+	public K evict() {
+
+		final Node<K> victim;
+
+		if (probation.size > 1) {
+			final Node<K> candidate = probation.last();
+			final Node<K> leastRecentlyUsed = probation.first();
+			victim = sketch.frequency(candidate.key) > sketch.frequency(leastRecentlyUsed.key) ?
+					leastRecentlyUsed :
+					candidate;
+		} else if (probation.size == 1) {
+			victim = probation.first();
+		} else if (protectedSegment.size > 0) {
+			victim = protectedSegment.first();
+		} else {
+			victim = window.first();
+		}
+
+		if (victim == null) {
+			return null;
+		}
+
+		segment(victim).remove(victim);
+		nodes.remove(victim.key);
+		return victim.key;
+	}
+
+	private AccessOrderList<K> segment(final Node<K> node) {
+		switch (node.segment) {
+			case WINDOW:
+				return window;
+			case PROBATION:
+				return probation;
+			default:
+				return protectedSegment;
+		}
+	}
+
+	private static final class Node<K> {
+
+		private final K key;
+
+		private int segment;
+
+		private Node<K> prev;
+
+		private Node<K> next;
+
+		private Node(final K key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * A doubly linked list of nodes ordered from least to most recently used.
+	 */
+	private static final class AccessOrderList<K> {
+
+		private Node<K> head;
+
+		private Node<K> tail;
+
+		private long size;
+
+		private Node<K> first() {
+			return head;
+		}
+
+		private Node<K> last() {
+			return tail;
+		}
+
+		private void addLast(final Node<K> node, final int segment) {
+			node.segment = segment;
+			node.prev = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			size++;
+		}
+
+		private void remove(final Node<K> node) {
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+			size--;
+		}
+
+		private void moveToLast(final Node<K> node) {
+			if (node != tail) {
+				remove(node);
+				addLast(node, node.segment);
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package de.uniluebeck.itm.util;
+
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentTimedCacheTest {
+
+	private TimingWheel timingWheel;
+
+	private ConcurrentTimedCache<String, String> cache;
+
+	@Before
+	public void setUp() throws Exception {
+		timingWheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64);
+		cache = new ConcurrentTimedCache<String, String>(timingWheel, 100, TimeUnit.MILLISECONDS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		timingWheel.stop();
+	}
+
+	@Test
+	public void testEntriesAreReturnedBeforeTimeout() throws Exception {
+		assertNull(cache.put("k", "v"));
+		assertEquals("v", cache.get("k"));
+		assertEquals(1, cache.size());
+		assertTrue(cache.containsKey("k"));
+		assertTrue(cache.containsValue("v"));
+	}
+
+	@Test
+	public void testEntriesAreRemovedAfterTimeout() throws Exception {
+		cache.put("k", "v");
+		Thread.sleep(300);
+		assertNull(cache.get("k"));
+		assertTrue(cache.isEmpty());
+	}
+
+	@Test
+	public void testEntriesWithLongTimeoutSurviveMultipleWheelRevolutions() throws Exception {
+		cache.put("k", "v", 1500, TimeUnit.MILLISECONDS);
+		Thread.sleep(1000);
+		assertTrue(cache.containsKey("k"));
+		Thread.sleep(800);
+		assertFalse(cache.containsKey("k"));
+	}
+
+	@Test
+	public void testReadingAnEntryResetsItsTimeout() throws Exception {
+		cache.put("k", "v", 300, TimeUnit.MILLISECONDS);
+		for (int i = 0; i < 5; i++) {
+			Thread.sleep(150);
+			assertEquals("v", cache.get("k"));
+		}
+		Thread.sleep(600);
+		assertFalse(cache.containsKey("k"));
+	}
+
+	@Test
+	public void testReadingAnEntryKeepsItAliveInAccessTimeMode() throws Exception {
+		cache.setTouchMode(TimedCacheTouchMode.ACCESS_TIME);
+		cache.put("k", "v", 300, TimeUnit.MILLISECONDS);
+		for (int i = 0; i < 5; i++) {
+			Thread.sleep(150);
+			assertEquals("v", cache.get("k"));
+		}
+		Thread.sleep(600);
+		assertFalse(cache.containsKey("k"));
+	}
+
+	@Test
+	public void testRemovedEntriesDoNotAffectLaterEntriesForTheSameKey() throws Exception {
+		cache.put("k", "v1", 100, TimeUnit.MILLISECONDS);
+		assertEquals("v1", cache.remove("k"));
+		cache.put("k", "v2", 1, TimeUnit.SECONDS);
+		Thread.sleep(300);
+		assertEquals("v2", cache.get("k"));
+	}
+
+	@Test
+	public void testListenerCanKeepEntryAliveByReturningNewTimeout() throws Exception {
+
+		final AtomicInteger invocations = new AtomicInteger();
+		final CountDownLatch finallyRemoved = new CountDownLatch(1);
+
+		cache.setListener(new TimedCacheListener<String, String>() {
+			@Override
+			public Tuple<Long, TimeUnit> timeout(final String key, final String value) {
+				if (invocations.incrementAndGet() < 3) {
+					return new Tuple<Long, TimeUnit>(50L, TimeUnit.MILLISECONDS);
+				}
+				finallyRemoved.countDown();
+				return null;
+			}
+		}
+		);
+
+		cache.put("k", "v", 50, TimeUnit.MILLISECONDS);
+		assertTrue(finallyRemoved.await(2, TimeUnit.SECONDS));
+		assertEquals(3, invocations.get());
+		assertFalse(cache.containsKey("k"));
+	}
+
+	@Test
+	public void testConditionalOperations() throws Exception {
+		assertNull(cache.putIfAbsent("k", "v1"));
+		assertEquals("v1", cache.putIfAbsent("k", "v2"));
+		assertFalse(cache.replace("k", "v2", "v3"));
+		assertTrue(cache.replace("k", "v1", "v3"));
+		assertEquals("v3", cache.replace("k", "v4"));
+		assertFalse(cache.remove("k", "v3"));
+		assertTrue(cache.remove("k", "v4"));
+		assertTrue(cache.isEmpty());
+	}
+
+	@Test
+	public void testRemovingThroughViewsRemovesFromCache() throws Exception {
+		cache.enableStats();
+		cache.put("a", "1", 10, TimeUnit.SECONDS);
+		cache.put("b", "2", 10, TimeUnit.SECONDS);
+		cache.put("c", "3", 10, TimeUnit.SECONDS);
+		cache.put("d", "4", 10, TimeUnit.SECONDS);
+
+		final Iterator<String> iterator = cache.keySet().iterator();
+		final String removed = iterator.next();
+		iterator.remove();
+		assertTrue(cache.keySet().remove("a".equals(removed) ? "b" : "a"));
+		assertTrue(cache.entrySet().retainAll(Collections.singleton(Maps.immutableEntry("d", "4"))));
+		cache.entrySet().iterator().next().setValue("5");
+
+		assertEquals(1, cache.size());
+		assertEquals("5", cache.get("d"));
+		assertEquals(3, cache.getStats().getExplicitRemovalCount());
+	}
+
+	@Test
+	public void testConcurrentWritersKeepMapConsistent() throws Exception {
+
+		final int threads = 8;
+		final int keysPerThread = 10000;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch done = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < keysPerThread; i++) {
+						final String key = thread + "-" + i;
+						cache.put(key, key, 10, TimeUnit.SECONDS);
+						cache.get(key);
+					}
+					done.countDown();
+				}
+			}
+			);
+		}
+
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		executor.shutdown();
+
+		assertEquals(threads * keysPerThread, cache.size());
+		assertEquals(threads * keysPerThread, cache.entrySet().size());
+		cache.clear();
+		assertTrue(cache.isEmpty());
+	}
+}
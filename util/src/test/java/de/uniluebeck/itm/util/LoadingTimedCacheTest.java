@@ -0,0 +1,114 @@
+package de.uniluebeck.itm.util;
+
+import com.google.common.cache.CacheLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LoadingTimedCacheTest {
+
+	private TimingWheel timingWheel;
+
+	private ExecutorService executor;
+
+	private AtomicInteger loads;
+
+	private CountDownLatch loadLatch;
+
+	private LoadingTimedCache<String, String> cache;
+
+	@Before
+	public void setUp() throws Exception {
+		timingWheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64);
+		executor = Executors.newCachedThreadPool();
+		loads = new AtomicInteger();
+		loadLatch = new CountDownLatch(0);
+		cache = new LoadingTimedCache<String, String>(timingWheel, 1, TimeUnit.SECONDS, new CacheLoader<String, String>() {
+			@Override
+			public String load(final String key) throws Exception {
+				loadLatch.await();
+				if ("fail".equals(key)) {
+					throw new IllegalStateException(key);
+				}
+				return key + loads.incrementAndGet();
+			}
+		}, executor
+		);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		timingWheel.stop();
+	}
+
+	@Test
+	public void testMissingValuesAreLoadedOnce() throws Exception {
+		assertEquals("k1", cache.getOrLoad("k"));
+		assertEquals("k1", cache.getOrLoad("k"));
+		assertEquals("k1", cache.getAsync("k").get());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testConcurrentMissesShareOneLoad() throws Exception {
+		loadLatch = new CountDownLatch(1);
+		final int threads = 8;
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger matches = new AtomicInteger();
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if ("k1".equals(cache.getOrLoad("k"))) {
+							matches.incrementAndGet();
+						}
+					} catch (ExecutionException e) {
+						throw new RuntimeException(e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}
+			);
+		}
+		Thread.sleep(100);
+		loadLatch.countDown();
+		assertTrue(done.await(1, TimeUnit.SECONDS));
+		assertEquals(threads, matches.get());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testLoadFailuresAreReportedAndNotCached() throws Exception {
+		cache.enableStats();
+		try {
+			cache.getOrLoad("fail");
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertFalse(cache.containsKey("fail"));
+		assertEquals(1, cache.getStats().getLoadFailureCount());
+	}
+
+	@Test
+	public void testStaleValuesAreServedWhileRefreshing() throws Exception {
+		cache.setRefreshAfter(100, TimeUnit.MILLISECONDS);
+		assertEquals("k1", cache.getOrLoad("k"));
+		Thread.sleep(150);
+		assertEquals("k1", cache.get("k"));
+		Thread.sleep(100);
+		assertEquals("k2", cache.get("k"));
+	}
+}
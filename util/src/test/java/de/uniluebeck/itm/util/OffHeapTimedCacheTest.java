@@ -0,0 +1,174 @@
+package de.uniluebeck.itm.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class OffHeapTimedCacheTest {
+
+	private TimingWheel timingWheel;
+
+	private OffHeapTimedCache<String> cache;
+
+	@Before
+	public void setUp() throws Exception {
+		timingWheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64);
+		cache = new OffHeapTimedCache<String>(timingWheel, 10, TimeUnit.SECONDS, 4096, 1024);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		cache.close();
+		timingWheel.stop();
+	}
+
+	@Test
+	public void testValuesAreReturnedAsReadOnlyViews() throws Exception {
+		final byte[] value = bytes(100, (byte) 7);
+		cache.put("a", value);
+
+		final ByteBuffer view = cache.get("a");
+		assertEquals(100, view.remaining());
+		assertTrue(view.isReadOnly());
+		assertTrue(view.isDirect());
+		assertArrayEquals(value, cache.getBytes("a"));
+		try {
+			view.put(0, (byte) 1);
+			fail();
+		} catch (ReadOnlyBufferException expected) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testChunksOfRemovedEntriesAreReused() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			cache.put("a", bytes(500, (byte) i));
+			cache.remove("a");
+		}
+		assertEquals(1024, cache.getAllocatedBytes());
+		assertEquals(0, cache.getUsedBytes());
+	}
+
+	@Test
+	public void testFreedChunksAreReusedWhenValueSizesShift() throws Exception {
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 32; i++) {
+				cache.put("small" + i, bytes(100, (byte) i));
+			}
+			cache.clear();
+			for (int i = 0; i < 4; i++) {
+				cache.put("large" + i, bytes(1000, (byte) i));
+			}
+			assertArrayEquals(bytes(1000, (byte) 3), cache.getBytes("large3"));
+			cache.clear();
+		}
+		assertEquals(4096, cache.getAllocatedBytes());
+		assertEquals(0, cache.getUsedBytes());
+	}
+
+	@Test
+	public void testPutsAfterCloseDoNotAllocate() throws Exception {
+		cache.close();
+		try {
+			cache.put("a", bytes(100, (byte) 1));
+			fail();
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+		assertEquals(0, cache.getAllocatedBytes());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntriesAreEvictedWhenCapacityIsExceeded() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			cache.put("k" + i, bytes(1000, (byte) i));
+		}
+		cache.get("k0");
+		cache.put("k4", bytes(1000, (byte) 4));
+
+		assertEquals(4, cache.size());
+		assertTrue(cache.containsKey("k0"));
+		assertFalse(cache.containsKey("k1"));
+		assertEquals(4096, cache.getUsedBytes());
+		assertArrayEquals(bytes(1000, (byte) 4), cache.getBytes("k4"));
+	}
+
+	@Test
+	public void testEntriesExpire() throws Exception {
+		cache.put("a", bytes(10, (byte) 1), 50, TimeUnit.MILLISECONDS);
+		Thread.sleep(300);
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getUsedBytes());
+	}
+
+	@Test
+	public void testCopiesAreConsistentWhileEntriesAreReplacedConcurrently() throws Exception {
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		final List<Thread> threads = new ArrayList<Thread>();
+
+		for (int t = 0; t < 2; t++) {
+			final int writer = t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; running.get(); i++) {
+						// the length is derived from the fill byte, so a reader can tell a mix of two values apart
+						final byte value = (byte) (writer * 64 + i % 64);
+						cache.put("k" + (i % 8), bytes(100 + value, value));
+					}
+				}
+			}
+			);
+		}
+		for (int t = 0; t < 2; t++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; running.get(); i++) {
+						final byte[] copy = cache.getBytes("k" + (i % 8));
+						if (copy != null && !Arrays.equals(bytes(100 + copy[0], copy[0]), copy)) {
+							failure.compareAndSet(null, "Inconsistent copy of " + copy.length + " bytes starting with " + copy[0]);
+						}
+					}
+				}
+			}
+			);
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(500);
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(failure.get(), failure.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testValuesLargerThanSlabsAreRejected() throws Exception {
+		cache.put("a", new byte[2048]);
+	}
+
+	private static byte[] bytes(final int length, final byte value) {
+		final byte[] bytes = new byte[length];
+		Arrays.fill(bytes, value);
+		return bytes;
+	}
+}
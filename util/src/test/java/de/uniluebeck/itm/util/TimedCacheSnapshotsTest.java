@@ -0,0 +1,119 @@
+package de.uniluebeck.itm.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimedCacheSnapshotsTest {
+
+	private static final Function<String, byte[]> ENCODER = new Function<String, byte[]>() {
+		@Override
+		public byte[] apply(final String input) {
+			return input.getBytes(Charsets.UTF_8);
+		}
+	};
+
+	private static final Function<byte[], String> DECODER = new Function<byte[], String>() {
+		@Override
+		public String apply(final byte[] input) {
+			return new String(input, Charsets.UTF_8);
+		}
+	};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TimingWheel timingWheel;
+
+	@Before
+	public void setUp() throws Exception {
+		timingWheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 64);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		timingWheel.stop();
+	}
+
+	@Test
+	public void testSnapshotIsRestoredWithAdjustedTimeouts() throws Exception {
+
+		final TimedCache<String, String> cache = new TimedCache<String, String>(timingWheel, 10, TimeUnit.SECONDS);
+		cache.put("long", "1");
+		cache.put("short", "2", 300, TimeUnit.MILLISECONDS);
+
+		final File file = new File(folder.getRoot(), "cache.snapshot");
+		assertEquals(2, TimedCacheSnapshots.write(cache, file, ENCODER, ENCODER));
+		cache.close();
+
+		Thread.sleep(150);
+
+		final TimedCache<String, String> restored = new TimedCache<String, String>(timingWheel, 10, TimeUnit.SECONDS);
+		assertEquals(2, TimedCacheSnapshots.read(restored, file, DECODER, DECODER));
+		assertTrue(restored.getRemainingNanos("short") < TimeUnit.MILLISECONDS.toNanos(200));
+		assertEquals("1", restored.get("long"));
+		assertEquals("2", restored.get("short"));
+
+		Thread.sleep(500);
+		assertFalse(restored.containsKey("short"));
+		assertTrue(restored.containsKey("long"));
+	}
+
+	@Test
+	public void testRestoredEntriesKeepTheirOriginalTimeoutWhenTouched() throws Exception {
+
+		final TimedCache<String, String> cache = new TimedCache<String, String>(timingWheel, 10, TimeUnit.SECONDS);
+		cache.put("a", "1", 2, TimeUnit.SECONDS);
+
+		final File file = new File(folder.getRoot(), "cache.snapshot");
+		TimedCacheSnapshots.write(cache, file, ENCODER, ENCODER);
+		cache.close();
+
+		Thread.sleep(300);
+
+		final TimedCache<String, String> restored = new TimedCache<String, String>(timingWheel, 10, TimeUnit.SECONDS);
+		TimedCacheSnapshots.read(restored, file, DECODER, DECODER);
+		assertTrue(restored.getRemainingNanos("a") < TimeUnit.MILLISECONDS.toNanos(1800));
+
+		assertEquals("1", restored.get("a"));
+		assertTrue(restored.getRemainingNanos("a") > TimeUnit.MILLISECONDS.toNanos(1900));
+		assertTrue(restored.getRemainingNanos("a") <= TimeUnit.SECONDS.toNanos(2));
+		restored.close();
+	}
+
+	@Test
+	public void testSnapshotReplacesExistingFileWithoutLeavingTempFiles() throws Exception {
+
+		final TimedCache<String, String> cache = new TimedCache<String, String>(timingWheel, 10, TimeUnit.SECONDS);
+		cache.put("a", "1");
+
+		final File file = new File(folder.getRoot(), "cache.snapshot");
+		TimedCacheSnapshots.write(cache, file, ENCODER, ENCODER);
+		cache.put("b", "2");
+		assertEquals(2, TimedCacheSnapshots.write(cache, file, ENCODER, ENCODER));
+		cache.close();
+
+		assertArrayEquals(new String[]{"cache.snapshot"}, folder.getRoot().list());
+		final TimedCache<String, String> restored = new TimedCache<String, String>(timingWheel, 10, TimeUnit.SECONDS);
+		assertEquals(2, TimedCacheSnapshots.read(restored, file, DECODER, DECODER));
+		restored.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadingOtherFilesFails() throws Exception {
+		final File file = folder.newFile("garbage");
+		Files.write("garbage".getBytes(Charsets.UTF_8), file);
+		TimedCacheSnapshots.read(new TimedCache<String, String>(timingWheel), file, DECODER, DECODER);
+	}
+}
@@ -0,0 +1,255 @@
+package de.uniluebeck.itm.util;
+
+import com.google.common.cache.Weigher;
+import de.uniluebeck.itm.util.eviction.LfuEvictionPolicy;
+import de.uniluebeck.itm.util.eviction.LruEvictionPolicy;
+import de.uniluebeck.itm.util.eviction.WTinyLfuEvictionPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.*;
+
+public class TimedCacheTest {
+
+	private ScheduledExecutorService scheduler;
+
+	private TimedCache<String, String> cache;
+
+	private final List<String> removals = newArrayList();
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		cache = new TimedCache<String, String>(scheduler, 10, TimeUnit.SECONDS);
+		cache.setListener(new TimedCacheRemovalListener<String, String>() {
+			@Override
+			public void removed(final String key, final String value, final TimedCacheRemovalCause cause) {
+				removals.add(key + "=" + value + ":" + cause);
+			}
+
+			@Override
+			public Tuple<Long, TimeUnit> timeout(final String key, final String value) {
+				return null;
+			}
+		}
+		);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testRemovalCausesAreReported() throws Exception {
+
+		cache.put("a", "1");
+		cache.put("a", "2");
+		cache.remove("a");
+		cache.put("b", "3", 50, TimeUnit.MILLISECONDS);
+		Thread.sleep(300);
+
+		assertEquals(newArrayList("a=1:REPLACED", "a=2:EXPLICIT", "b=3:EXPIRED"), removals);
+	}
+
+	@Test
+	public void testLruPolicyEvictsLeastRecentlyUsedEntry() throws Exception {
+
+		cache.setMaximumSize(2, new LruEvictionPolicy<String>());
+
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.get("a");
+		cache.put("c", "3");
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.containsKey("a"));
+		assertFalse(cache.containsKey("b"));
+		assertEquals(newArrayList("b=2:SIZE"), removals);
+	}
+
+	@Test
+	public void testLfuPolicyEvictsLeastFrequentlyUsedEntry() throws Exception {
+
+		cache.setMaximumSize(2, new LfuEvictionPolicy<String>());
+
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+		cache.put("c", "3");
+		cache.put("b", "4");
+
+		assertTrue(cache.containsKey("a"));
+		assertTrue(cache.containsKey("b"));
+		assertEquals(newArrayList("c=3:SIZE", "b=2:REPLACED"), removals);
+	}
+
+	@Test
+	public void testWTinyLfuPolicyKeepsFrequentlyUsedEntriesDuringScan() throws Exception {
+
+		cache.setMaximumSize(100, new WTinyLfuEvictionPolicy<String>(100));
+
+		for (int i = 0; i < 50; i++) {
+			cache.put("hot" + i, "v");
+		}
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 50; i++) {
+				cache.get("hot" + i);
+			}
+		}
+		for (int i = 0; i < 1000; i++) {
+			cache.put("scan" + i, "v");
+		}
+
+		assertEquals(100, cache.size());
+		for (int i = 0; i < 50; i++) {
+			assertTrue(cache.containsKey("hot" + i));
+		}
+	}
+
+	@Test
+	public void testWeightBoundIsRespected() throws Exception {
+
+		cache.setMaximumWeight(10, new Weigher<String, String>() {
+			@Override
+			public int weigh(final String key, final String value) {
+				return value.length();
+			}
+		}, new LruEvictionPolicy<String>()
+		);
+
+		cache.put("a", "12345");
+		cache.put("b", "1234");
+		cache.put("c", "12");
+
+		assertFalse(cache.containsKey("a"));
+		assertTrue(cache.containsKey("b"));
+		assertTrue(cache.containsKey("c"));
+	}
+
+	@Test
+	public void testStatsAreRecordedWhenEnabled() throws Exception {
+
+		cache.enableStats();
+		cache.setMaximumSize(1, new LruEvictionPolicy<String>());
+
+		cache.put("a", "1");
+		cache.get("a");
+		cache.get("b");
+		cache.put("b", "2");
+		cache.remove("b");
+
+		final TimedCacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(2, stats.getPutCount());
+		assertEquals(1, stats.getEvictionCount());
+		assertEquals(1, stats.getExplicitRemovalCount());
+		assertEquals(0, stats.getEntryCount());
+		assertEquals(2, stats.getGetLatency().getCount());
+		assertEquals(0.5, stats.getHitRate(), 0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStatsCanNotBeRetrievedIfNotEnabled() throws Exception {
+		cache.getStats();
+	}
+
+	@Test
+	public void testEntriesExpireOnSharedTimingWheel() throws Exception {
+		final TimedCache<String, String> sharedCache = new TimedCache<String, String>(50, TimeUnit.MILLISECONDS);
+		sharedCache.put("a", "1");
+		Thread.sleep(400);
+		assertFalse(sharedCache.containsKey("a"));
+		sharedCache.close();
+	}
+
+	@Test
+	public void testClosingDiscardsEntriesAndRejectsPuts() throws Exception {
+		cache.put("a", "1");
+		cache.close();
+		assertTrue(cache.isEmpty());
+		assertTrue(removals.isEmpty());
+		try {
+			cache.put("b", "2");
+			fail();
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testIteratingWhileEntriesExpireDoesNotFail() throws Exception {
+		for (int i = 0; i < 10000; i++) {
+			cache.put("k" + i, "v", 1 + i % 50, TimeUnit.MILLISECONDS);
+		}
+		final long end = System.currentTimeMillis() + 200;
+		while (System.currentTimeMillis() < end) {
+			for (String key : cache.keySet()) {
+				assertNotNull(key);
+			}
+		}
+	}
+
+	@Test
+	public void testRemovingThroughViewsRemovesFromCache() throws Exception {
+		cache.put("a", "1");
+		cache.put("b", "2");
+		final Iterator<String> iterator = cache.keySet().iterator();
+		final String removed = iterator.next();
+		iterator.remove();
+		cache.entrySet().iterator().next().setValue("3");
+
+		assertFalse(cache.containsKey(removed));
+		assertEquals(1, cache.size());
+		assertTrue(cache.containsValue("3"));
+		assertEquals(removed + "=" + ("a".equals(removed) ? "1" : "2") + ":EXPLICIT", removals.get(0));
+	}
+
+	@Test
+	public void testParallelReduceAndForEachVisitAllEntries() throws Exception {
+		for (int i = 0; i < 10000; i++) {
+			cache.put("k" + i, Integer.toString(i));
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final Long sum = cache.reduce(new TimedCacheReducer<String, String, Long>() {
+				@Override
+				public Long transform(final String key, final String value) {
+					return Long.parseLong(value);
+				}
+
+				@Override
+				public Long combine(final Long left, final Long right) {
+					return left + right;
+				}
+			}, executor, 4
+			);
+			assertEquals(Long.valueOf(49995000), sum);
+
+			final AtomicInteger visited = new AtomicInteger();
+			cache.forEach(new TimedCacheEntryVisitor<String, String>() {
+				@Override
+				public void visit(final String key, final String value) {
+					visited.incrementAndGet();
+				}
+			}, executor, 4
+			);
+			assertEquals(10000, visited.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}